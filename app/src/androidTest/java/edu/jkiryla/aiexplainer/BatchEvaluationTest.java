@@ -0,0 +1,97 @@
+package edu.jkiryla.aiexplainer;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import edu.jkiryla.aiexplainer.core.EvaluationStats;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Ewaluacja wsadowa na urządzeniu. Dane podaje się argumentami instrumentacji, np.:
+ * <pre>
+ * ./gradlew :app:connectedDebugAndroidTest \
+ *     -Pandroid.testInstrumentationRunnerArguments.class=edu.jkiryla.aiexplainer.BatchEvaluationTest \
+ *     -Pandroid.testInstrumentationRunnerArguments.evalModel=FERPLUS \
+ *     -Pandroid.testInstrumentationRunnerArguments.evalDir=/sdcard/Android/data/edu.jkiryla.aiexplainer/files/ferplus_test
+ * </pre>
+ * Zamiast evalDir można podać evalTensors (plik surowych tensorów) albo, dla MNIST, evalStrokes
+ * (plik pociągnięć, rasteryzowany tak jak w aplikacji). Opcjonalnie:
+ * evalVariant (INT8/FLOAT16/FLOAT32), evalBatchSizes (np. "1,8,32"), evalCrop (domyślnie 1.0).
+ * Raport trafia do logu i do pliku evaluation_&lt;MODEL&gt;.txt w katalogu plików aplikacji.
+ * Z evalExportGate=true równomierny wybór próbek (evalGateSamples, domyślnie 500) trafia też
+ * do pliku &lt;model&gt;_gate.bin; dołączony do assets obok wariantu kwantyzowanego służy jako
+ * zbiór bramki dokładności w {@link ModelRegistry}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BatchEvaluationTest {
+
+    private static final String TAG = "BatchEvaluation";
+
+    @Test
+    public void evaluate() throws Exception {
+        Bundle args = InstrumentationRegistry.getArguments();
+        String dir = args.getString("evalDir");
+        String tensors = args.getString("evalTensors");
+        String strokes = args.getString("evalStrokes");
+        assumeTrue("No evalDir, evalTensors or evalStrokes argument, skipping batch evaluation",
+                dir != null || tensors != null || strokes != null);
+
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        ModelRegistry.Model model = ModelRegistry.Model.valueOf(args.getString("evalModel", "FERPLUS"));
+        ModelRegistry.Variant variant = ModelRegistry.Variant.valueOf(args.getString("evalVariant", "FLOAT32"));
+        String[] sizes = args.getString("evalBatchSizes", "1,8,32").split(",");
+        int[] batchSizes = new int[sizes.length];
+        for (int i = 0; i < sizes.length; i++) batchSizes[i] = Integer.parseInt(sizes[i].trim());
+        float cropFraction = Float.parseFloat(args.getString("evalCrop", "1.0"));
+
+        EvaluationStats stats;
+        try (BatchEvaluator evaluator = new BatchEvaluator(context, model, variant)) {
+            int inputSize = evaluator.getInputSize();
+            try (BatchEvaluator.SampleSource source = dir != null
+                    ? BatchEvaluator.imageDirectory(new File(dir), model, inputSize, cropFraction)
+                    : strokes != null
+                    ? BatchEvaluator.strokeFile(new File(strokes), inputSize)
+                    : BatchEvaluator.tensorFile(new File(tensors), inputSize * inputSize)) {
+                stats = evaluator.evaluate(source, batchSizes);
+                if (Boolean.parseBoolean(args.getString("evalExportGate", "false"))) {
+                    exportGate(context, model, source, inputSize * inputSize,
+                            Integer.parseInt(args.getString("evalGateSamples", "500")));
+                }
+            }
+        }
+
+        String report = model.assetName(variant) + "\n" + stats.toReport();
+        Log.i(TAG, report);
+        File out = new File(context.getExternalFilesDir(null), "evaluation_" + model.name() + ".txt");
+        try (FileOutputStream stream = new FileOutputStream(out)) {
+            stream.write(report.getBytes(StandardCharsets.UTF_8));
+        }
+        assertTrue("No samples were evaluated", stats.getTotal() > 0);
+    }
+
+    private static void exportGate(Context context, ModelRegistry.Model model, BatchEvaluator.SampleSource source,
+                                   int elements, int samples) throws Exception {
+        // Co n-ta próbka, żeby przy katalogach posortowanych według klas objąć wszystkie klasy
+        float[] sample = new float[elements];
+        int total = 0;
+        source.rewind();
+        while (source.next(sample)) total++;
+        int stride = Math.max(1, total / samples);
+        File out = new File(context.getExternalFilesDir(null), model.gateAssetName());
+        int written = BatchEvaluator.exportTensors(source, out, elements, stride, samples);
+        Log.i(TAG, "Exported " + written + " gate samples to " + out);
+    }
+}
@@ -0,0 +1,145 @@
+package edu.jkiryla.aiexplainer;
+
+import android.content.Context;
+
+import edu.jkiryla.aiexplainer.core.ModelGraph;
+
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Odczytuje prawdziwe aktywacje warstw modelu z jednego wywołania interpretera.
+ * Wyjścia warstw konwolucyjnych i gęstych są dopisywane do wyjść grafu (patrz {@link ModelGraph}),
+ * a wyniki są zapamiętywane dla ostatnich wejść.
+ */
+final class ActivationExtractor implements Closeable {
+
+    static final class Activation {
+        final String name;
+        final int opCode;
+        final int[] shape;
+        final float[] values;
+
+        Activation(String name, int opCode, int[] shape, float[] values) {
+            this.name = name;
+            this.opCode = opCode;
+            this.shape = shape;
+            this.values = values;
+        }
+
+        boolean isConvolution() {
+            return opCode == ModelGraph.OP_CONV_2D || opCode == ModelGraph.OP_DEPTHWISE_CONV_2D;
+        }
+    }
+
+    private static final class CacheEntry {
+        final float[] input;
+        final List<Activation> activations;
+
+        CacheEntry(float[] input, List<Activation> activations) {
+            this.input = input;
+            this.activations = activations;
+        }
+    }
+
+    private static final int CACHE_SIZE = 8;
+
+    private static final Map<String, CacheEntry> cache =
+            new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            };
+
+    private final ModelRegistry.Model model;
+    private final Interpreter interpreter;
+    private final List<ModelGraph.Layer> featureLayers;
+    private final ByteBuffer inputBuffer;
+    private final Object[] inputs;
+    private final Map<Integer, Object> outputs = new HashMap<>();
+
+    ActivationExtractor(Context context, ModelRegistry.Model model) throws IOException {
+        this.model = model;
+        // Zawsze model float32: aktywacje mają pokazywać wartości, a nie ich kwantyzację
+        ModelGraph graph = new ModelGraph(ModelRegistry.loadModelFile(context, model.assetName));
+        int originalOutputs = graph.getOutputCount();
+
+        featureLayers = graph.getFeatureLayers();
+        interpreter = new Interpreter(graph.withExtraOutputs(featureLayers),
+                ModelRegistry.getInstance(context).newOptions(model));
+
+        inputBuffer = ByteBuffer.allocateDirect(interpreter.getInputTensor(0).numBytes())
+                .order(ByteOrder.nativeOrder());
+        inputs = new Object[]{inputBuffer};
+        for (int i = 0; i < originalOutputs + featureLayers.size(); i++) {
+            outputs.put(i, ByteBuffer.allocateDirect(interpreter.getOutputTensor(i).numBytes())
+                    .order(ByteOrder.nativeOrder()));
+        }
+    }
+
+    private static String cacheKey(ModelRegistry.Model model, float[] input) {
+        return model.name() + ":" + Integer.toHexString(Arrays.hashCode(input)) + ":" + input.length;
+    }
+
+    /** Aktywacje z pamięci podręcznej albo null, jeśli dla tego wejścia jeszcze ich nie liczono. */
+    static List<Activation> getCached(ModelRegistry.Model model, float[] input) {
+        synchronized (cache) {
+            CacheEntry cached = cache.get(cacheKey(model, input));
+            return cached != null && Arrays.equals(cached.input, input) ? cached.activations : null;
+        }
+    }
+
+    /**
+     * Zwraca aktywacje kolejnych warstw; ostatni element to wyjście modelu.
+     */
+    synchronized List<Activation> extract(float[] input) {
+        List<Activation> cached = getCached(model, input);
+        if (cached != null) return cached;
+
+        inputBuffer.rewind();
+        inputBuffer.asFloatBuffer().put(input);
+        for (Object output : outputs.values()) ((ByteBuffer) output).rewind();
+        interpreter.runForMultipleInputsOutputs(inputs, outputs);
+
+        int originalOutputs = outputs.size() - featureLayers.size();
+        List<Activation> result = new ArrayList<>();
+        for (int i = 0; i < featureLayers.size(); i++) {
+            ModelGraph.Layer layer = featureLayers.get(i);
+            result.add(readOutput(originalOutputs + i, layer.tensorName, layer.opCode));
+        }
+        result.add(readOutput(0, "output", -1));
+        result = Collections.unmodifiableList(result);
+
+        synchronized (cache) {
+            cache.put(cacheKey(model, input), new CacheEntry(input.clone(), result));
+        }
+        return result;
+    }
+
+    private Activation readOutput(int index, String name, int opCode) {
+        Tensor tensor = interpreter.getOutputTensor(index);
+        ByteBuffer buffer = (ByteBuffer) outputs.get(index);
+        buffer.rewind();
+        float[] values = new float[tensor.numElements()];
+        buffer.asFloatBuffer().get(values);
+        return new Activation(name, opCode, tensor.shape(), values);
+    }
+
+    @Override
+    public synchronized void close() {
+        interpreter.close();
+    }
+}
@@ -0,0 +1,398 @@
+package edu.jkiryla.aiexplainer;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.SystemClock;
+
+import edu.jkiryla.aiexplainer.core.CoverageGrid;
+import edu.jkiryla.aiexplainer.core.EvaluationStats;
+import edu.jkiryla.aiexplainer.core.LumaPreprocessor;
+import edu.jkiryla.aiexplainer.core.StrokeStore;
+import edu.jkiryla.aiexplainer.core.TensorCodec;
+import edu.jkiryla.aiexplainer.core.TensorOps;
+
+import org.tensorflow.lite.Interpreter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Ewaluacja wsadowa modelu poza interfejsem: przepuszcza katalog obrazów, plik pociągnięć (MNIST)
+ * albo plik surowych tensorów przez preprocessing aktywności i uruchamia model na wsadach [N, H, W, 1]
+ * ({@link Interpreter#resizeInput}). Używa własnego interpretera, więc nie zmienia kształtu
+ * tego, który pożyczają aktywności.
+ */
+final class BatchEvaluator implements Closeable {
+
+    /** Strumień próbek z etykietami; {@link #rewind()} pozwala przejść dane ponownie dla innego wsadu. */
+    interface SampleSource extends Closeable {
+        /** Wypełnia {@code tensor} kolejną próbką; false na końcu danych. */
+        boolean next(float[] tensor) throws IOException;
+
+        int label();
+
+        void rewind() throws IOException;
+    }
+
+    // Nazwy klas FER+ z oryginalnego zbioru, w kolejności wyjść modelu
+    private static final String[] FERPLUS_DATASET_LABELS = {
+            "neutral", "happiness", "surprise", "sadness", "anger", "disgust", "fear", "contempt"
+    };
+
+    private final ModelRegistry.Model model;
+    private final Interpreter interpreter;
+    private final int inputSize;
+    private final int numClasses;
+
+    BatchEvaluator(Context context, ModelRegistry.Model model, ModelRegistry.Variant variant) throws IOException {
+        this.model = model;
+        interpreter = new Interpreter(ModelRegistry.loadModelFile(context, model.assetName(variant)),
+                ModelRegistry.getInstance(context).newOptions(model));
+        int[] inputShape = interpreter.getInputTensor(0).shape();
+        inputSize = inputShape[1];
+        numClasses = interpreter.getOutputTensor(0).numElements();
+    }
+
+    int getInputSize() {
+        return inputSize;
+    }
+
+    /**
+     * Przechodzi całe dane raz dla każdego rozmiaru wsadu. Trafność i macierz pomyłek
+     * pochodzą z pierwszego przejścia; czasy są zbierane dla wszystkich.
+     */
+    EvaluationStats evaluate(SampleSource source, int[] batchSizes) throws IOException {
+        EvaluationStats stats = new EvaluationStats(model.labels);
+        int elements = inputSize * inputSize;
+
+        for (int pass = 0; pass < batchSizes.length; pass++) {
+            int batchSize = batchSizes[pass];
+            interpreter.resizeInput(0, new int[]{batchSize, inputSize, inputSize, 1});
+            interpreter.allocateTensors();
+            TensorCodec inputCodec = ModelRegistry.inputCodec(interpreter, 0);
+            TensorCodec outputCodec = ModelRegistry.outputCodec(interpreter, 0);
+            float[] batchInput = new float[batchSize * elements];
+            float[] batchOutput = new float[batchSize * numClasses];
+            float[] sample = new float[elements];
+            float[] row = new float[numClasses];
+            int[] labels = new int[batchSize];
+
+            source.rewind();
+            boolean more = true;
+            while (more) {
+                int count = 0;
+                while (count < batchSize && (more = source.next(sample))) {
+                    System.arraycopy(sample, 0, batchInput, count * elements, elements);
+                    labels[count++] = source.label();
+                }
+                if (count == 0) break;
+                // Ostatni niepełny wsad dopełniamy zerami, żeby nie zmieniać kształtu
+                Arrays.fill(batchInput, count * elements, batchInput.length, 0f);
+
+                inputCodec.encode(batchInput);
+                long start = SystemClock.elapsedRealtimeNanos();
+                interpreter.run(inputCodec.buffer(), outputCodec.buffer());
+                stats.recordBatch(batchSize, count, SystemClock.elapsedRealtimeNanos() - start);
+                outputCodec.decode(batchOutput);
+
+                if (pass == 0) {
+                    for (int i = 0; i < count; i++) {
+                        System.arraycopy(batchOutput, i * numClasses, row, 0, numClasses);
+                        stats.recordPrediction(labels[i], TensorOps.argmax(row));
+                    }
+                }
+            }
+        }
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        interpreter.close();
+    }
+
+    /** Otwiera dane od początku; każde przejście dostaje nowy strumień. */
+    private interface StreamOpener {
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * Plik surowych tensorów: rekordy [etykieta int32][H*W wartości float32], little-endian,
+     * bez nagłówka. Wartości muszą być już znormalizowane tak jak wejście modelu.
+     */
+    static SampleSource tensorFile(File file, int elements) {
+        return tensorStream(() -> new FileInputStream(file), elements);
+    }
+
+    /** Surowe tensory jak w {@link #tensorFile} z zasobu aplikacji, np. zbiór bramki dokładności. */
+    static SampleSource tensorAsset(Context context, String assetName, int elements) {
+        return tensorStream(() -> context.getAssets().open(assetName), elements);
+    }
+
+    /**
+     * Zapisuje najwyżej {@code limit} próbek źródła w formacie {@link #tensorFile}, co {@code stride}
+     * próbkę, żeby z posortowanego katalogu wziąć wszystkie klasy. Zwraca liczbę zapisanych.
+     */
+    static int exportTensors(SampleSource source, File file, int elements, int stride, int limit)
+            throws IOException {
+        byte[] record = new byte[4 + 4 * elements];
+        ByteBuffer recordBuffer = ByteBuffer.wrap(record).order(ByteOrder.LITTLE_ENDIAN);
+        float[] sample = new float[elements];
+        int written = 0;
+        source.rewind();
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) {
+            for (int index = 0; written < limit && source.next(sample); index++) {
+                if (index % stride != 0) continue;
+                recordBuffer.rewind();
+                recordBuffer.putInt(source.label());
+                recordBuffer.asFloatBuffer().put(sample, 0, elements);
+                out.write(record);
+                written++;
+            }
+        }
+        return written;
+    }
+
+    private static SampleSource tensorStream(StreamOpener opener, int elements) {
+        return new SampleSource() {
+            private final byte[] record = new byte[4 + 4 * elements];
+            private final ByteBuffer recordBuffer = ByteBuffer.wrap(record).order(ByteOrder.LITTLE_ENDIAN);
+            private DataInputStream in;
+            private int label;
+
+            @Override
+            public boolean next(float[] tensor) throws IOException {
+                if (in == null) rewind();
+                try {
+                    in.readFully(record);
+                } catch (EOFException e) {
+                    return false;
+                }
+                recordBuffer.rewind();
+                label = recordBuffer.getInt();
+                recordBuffer.asFloatBuffer().get(tensor, 0, elements);
+                return true;
+            }
+
+            @Override
+            public int label() {
+                return label;
+            }
+
+            @Override
+            public void rewind() throws IOException {
+                close();
+                in = new DataInputStream(new BufferedInputStream(opener.open(), 1 << 16));
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (in != null) in.close();
+                in = null;
+            }
+        };
+    }
+
+    /**
+     * Katalog obrazów ułożonych w podkatalogach według klasy: nazwa podkatalogu to indeks klasy,
+     * jej nazwa z aplikacji albo (dla FER+) nazwa ze zbioru FER+, np. "happiness".
+     * MNIST: obrazy z ciemnym tuszem na jasnym tle, zmniejszane dwuliniowo i kodowane z czerwonego
+     * kanału. To inny potok niż w {@link MnistActivity}, która rasteryzuje pociągnięcia do
+     * {@link CoverageGrid}; regresje tamtego potoku wykrywa {@link #strokeFile}.
+     * FER+: wycięte twarze; jasność jest liczona tym samym {@link LumaPreprocessor} co w {@link FaceActivity},
+     * z wycinkiem środkowym {@code cropFraction} (1.0 dla gotowych wycinków ze zbioru).
+     */
+    static SampleSource imageDirectory(File root, ModelRegistry.Model model, int inputSize, float cropFraction)
+            throws IOException {
+        List<File> files = new ArrayList<>();
+        List<Integer> fileLabels = new ArrayList<>();
+        File[] classDirs = root.listFiles(File::isDirectory);
+        if (classDirs == null) throw new IOException("Not a directory: " + root);
+        Arrays.sort(classDirs);
+        for (File classDir : classDirs) {
+            int label = parseLabel(model, classDir.getName());
+            if (label < 0) throw new IOException("Unknown class directory: " + classDir.getName());
+            File[] images = classDir.listFiles(File::isFile);
+            if (images == null) continue;
+            Arrays.sort(images);
+            for (File image : images) {
+                files.add(image);
+                fileLabels.add(label);
+            }
+        }
+
+        return new SampleSource() {
+            private final LumaPreprocessor lumaPreprocessor = new LumaPreprocessor(inputSize);
+            private final Bitmap smallBitmap = Bitmap.createBitmap(inputSize, inputSize, Bitmap.Config.ARGB_8888);
+            private final Canvas smallCanvas = new Canvas(smallBitmap);
+            private final Rect smallRect = new Rect(0, 0, inputSize, inputSize);
+            private final Paint scalePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+            private final int[] smallPixels = new int[inputSize * inputSize];
+            private int index = -1;
+
+            @Override
+            public boolean next(float[] tensor) throws IOException {
+                while (++index < files.size()) {
+                    Bitmap bitmap = BitmapFactory.decodeFile(files.get(index).getPath());
+                    if (bitmap == null) continue; // nie-obraz w katalogu klasy
+                    try {
+                        if (model == ModelRegistry.Model.MNIST) encodeDrawing(bitmap, tensor);
+                        else encodeFace(bitmap, tensor);
+                    } finally {
+                        bitmap.recycle();
+                    }
+                    return true;
+                }
+                return false;
+            }
+
+            private void encodeDrawing(Bitmap bitmap, float[] tensor) {
+                smallBitmap.eraseColor(Color.WHITE);
+                smallCanvas.drawBitmap(bitmap, null, smallRect, scalePaint);
+                smallBitmap.getPixels(smallPixels, 0, inputSize, 0, 0, inputSize, inputSize);
+                TensorOps.encodeInvertedRed(smallPixels, FloatBuffer.wrap(tensor), null);
+            }
+
+            private void encodeFace(Bitmap bitmap, float[] tensor) {
+                int width = bitmap.getWidth();
+                int height = bitmap.getHeight();
+                int[] pixels = new int[width * height];
+                bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+                ByteBuffer luma = ByteBuffer.allocate(width * height);
+                for (int i = 0; i < pixels.length; i++) {
+                    int p = pixels[i];
+                    luma.put(i, (byte) ((((p >> 16) & 0xFF) * 299 + ((p >> 8) & 0xFF) * 587 + (p & 0xFF) * 114) / 1000));
+                }
+                lumaPreprocessor.processCenterCrop(luma, width, 1, width, height, 0, cropFraction,
+                        FloatBuffer.wrap(tensor), null);
+            }
+
+            @Override
+            public int label() {
+                return fileLabels.get(index);
+            }
+
+            @Override
+            public void rewind() {
+                index = -1;
+            }
+
+            @Override
+            public void close() {
+                smallBitmap.recycle();
+            }
+        };
+    }
+
+    /**
+     * Plik pociągnięć MNIST, po jednym rysunku w wierszu:
+     * {@code etykieta szerokośćWidoku wysokośćWidoku; grubość x y x y ...; grubość x y ...}
+     * (współrzędne widoku jak w {@link StrokeStore}). Rysunek przechodzi przez ten sam potok co
+     * w {@link MnistActivity}: {@link StrokeStore#rasterize} do {@link CoverageGrid}, potem
+     * {@link TensorOps#encodeUnit}. Puste wiersze i wiersze od "#" są pomijane.
+     */
+    static SampleSource strokeFile(File file, int inputSize) {
+        return new SampleSource() {
+            private final CoverageGrid grid = new CoverageGrid(inputSize);
+            private final StrokeStore strokes = new StrokeStore();
+            private final float[] cells = new float[inputSize * inputSize];
+            private BufferedReader in;
+            private int label;
+
+            @Override
+            public boolean next(float[] tensor) throws IOException {
+                if (in == null) rewind();
+                String line;
+                do {
+                    line = in.readLine();
+                    if (line == null) return false;
+                    line = line.trim();
+                } while (line.isEmpty() || line.startsWith("#"));
+                try {
+                    parse(line);
+                } catch (RuntimeException e) {
+                    throw new IOException("Malformed stroke line: " + line, e);
+                }
+                strokes.rasterize(grid);
+                grid.copyTo(cells);
+                TensorOps.encodeUnit(cells, FloatBuffer.wrap(tensor), null);
+                return true;
+            }
+
+            private void parse(String line) {
+                String[] parts = line.split(";");
+                String[] header = parts[0].trim().split("\\s+");
+                label = Integer.parseInt(header[0]);
+                grid.setViewSize(Integer.parseInt(header[1]), Integer.parseInt(header[2]));
+                strokes.clear();
+                for (int s = 1; s < parts.length; s++) {
+                    String[] values = parts[s].trim().split("\\s+");
+                    float width = Float.parseFloat(values[0]);
+                    strokes.beginStroke(Float.parseFloat(values[1]), Float.parseFloat(values[2]), width);
+                    for (int i = 3; i + 1 < values.length; i += 2) {
+                        strokes.addPoint(Float.parseFloat(values[i]), Float.parseFloat(values[i + 1]));
+                    }
+                    strokes.endStroke();
+                }
+            }
+
+            @Override
+            public int label() {
+                return label;
+            }
+
+            @Override
+            public void rewind() throws IOException {
+                close();
+                in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (in != null) in.close();
+                in = null;
+            }
+        };
+    }
+
+    private static int parseLabel(ModelRegistry.Model model, String name) {
+        for (int i = 0; i < model.labels.length; i++) {
+            if (model.labels[i].equalsIgnoreCase(name)) return i;
+        }
+        if (model == ModelRegistry.Model.FERPLUS) {
+            for (int i = 0; i < FERPLUS_DATASET_LABELS.length; i++) {
+                if (FERPLUS_DATASET_LABELS[i].equals(name.toLowerCase(Locale.ROOT))) return i;
+            }
+        }
+        try {
+            int index = Integer.parseInt(name);
+            return index >= 0 && index < model.labels.length ? index : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
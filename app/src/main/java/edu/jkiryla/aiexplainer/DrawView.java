@@ -1,22 +1,64 @@
 package edu.jkiryla.aiexplainer;
 
 import android.content.Context;
-import android.graphics.Bitmap;
 import android.graphics.Canvas;
-import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Path;
+import android.graphics.RecordingCanvas;
+import android.graphics.RenderNode;
+import android.os.Build;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.view.MotionEvent;
 import android.view.View;
 
+import androidx.annotation.RequiresApi;
+
+import edu.jkiryla.aiexplainer.core.CoverageGrid;
+import edu.jkiryla.aiexplainer.core.StrokeStore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Płótno do rysowania cyfr. Pociągnięcia są trzymane wektorowo w {@link StrokeStore}
+ * i rasteryzowane prosto do siatki 28x28 dla modelu; na ekranie rysujemy je jako ścieżki,
+ * bez pełnoekranowej bitmapy. Przy renderowaniu sprzętowym cały widok jest przerysowywany
+ * w każdej klatce, dlatego zakończone pociągnięcia (API 29+) siedzą w warstwie sprzętowej
+ * {@link RenderNode}, nagrywanej tylko przy zmianie listy; co klatkę dochodzi tylko bieżąca ścieżka.
+ */
 public class DrawView extends View {
 
+    public interface OnDrawingChangedListener {
+        void onDrawingChanged();
+    }
+
+    /**
+     * Czas od najstarszego jeszcze nienarysowanego zdarzenia dotyku do {@link #onDraw}
+     * (zdarzenie do rysowania, bez renderowania i wyświetlenia klatki).
+     */
+    public interface OnTouchLatencyListener {
+        void onTouchLatency(long nanos);
+    }
+
+    private static final float STROKE_WIDTH = 60;
+
+    private final CoverageGrid coverageGrid = new CoverageGrid(28);
+    private final StrokeStore strokeStore = new StrokeStore();
+    // Ścieżki zakończonych pociągnięć, równolegle do strokeStore.getStrokes()
+    private final List<Path> strokePaths = new ArrayList<>();
+    private OnDrawingChangedListener drawingChangedListener;
+    private OnTouchLatencyListener touchLatencyListener;
+    private float lastX, lastY;
+    // Czas (uptimeMillis) najstarszego nienarysowanego zdarzenia
+    private long pendingEventTime = -1;
+    // Warstwa zakończonych pociągnięć; null przed API 29 albo bez akceleracji sprzętowej
+    private StrokeLayer strokeLayer;
+    private boolean strokeLayerStale = true;
+
     private Path drawPath;
-    private Paint drawPaint, canvasPaint;
+    private Paint drawPaint;
     private int paintColor = 0xFF000000;
-    private Canvas drawCanvas;
-    private Bitmap canvasBitmap;
 
     public DrawView(Context context, AttributeSet attrs) {
         super(context, attrs);
@@ -28,26 +70,84 @@ public class DrawView extends View {
         drawPaint = new Paint();
         drawPaint.setColor(paintColor);
         drawPaint.setAntiAlias(true);
-        drawPaint.setStrokeWidth(60);
+        drawPaint.setStrokeWidth(STROKE_WIDTH);
         drawPaint.setStyle(Paint.Style.STROKE);
         drawPaint.setStrokeJoin(Paint.Join.ROUND);
         drawPaint.setStrokeCap(Paint.Cap.ROUND);
-        canvasPaint = new Paint(Paint.DITHER_FLAG);
     }
 
     @Override
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
-        canvasBitmap = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
-        drawCanvas = new Canvas(canvasBitmap);
-
-        drawCanvas.drawColor(Color.WHITE);
+        coverageGrid.setViewSize(w, h);
+        strokeStore.rasterize(coverageGrid);
+        strokeLayerStale = true;
     }
 
     @Override
     protected void onDraw(Canvas canvas) {
-        canvas.drawBitmap(canvasBitmap, 0, 0, canvasPaint);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && canvas.isHardwareAccelerated()) {
+            if (strokeLayer == null) strokeLayer = new StrokeLayer();
+            if (strokeLayerStale) {
+                strokeLayer.record(this, getWidth(), getHeight());
+                strokeLayerStale = false;
+            }
+            strokeLayer.draw(canvas);
+        } else {
+            drawFinishedStrokes(canvas);
+        }
+        drawPaint.setStrokeWidth(STROKE_WIDTH);
         canvas.drawPath(drawPath, drawPaint);
+        if (pendingEventTime >= 0) {
+            if (touchLatencyListener != null) {
+                touchLatencyListener.onTouchLatency((SystemClock.uptimeMillis() - pendingEventTime) * 1_000_000L);
+            }
+            pendingEventTime = -1;
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        // Zwalnia teksturę warstwy; po ponownym dołączeniu nagramy ją od nowa
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && strokeLayer != null) strokeLayer.discard();
+        strokeLayerStale = true;
+    }
+
+    private void drawFinishedStrokes(Canvas canvas) {
+        List<StrokeStore.Stroke> strokes = strokeStore.getStrokes();
+        for (int i = 0; i < strokePaths.size(); i++) {
+            drawPaint.setStrokeWidth(strokes.get(i).getWidth());
+            canvas.drawPath(strokePaths.get(i), drawPaint);
+        }
+    }
+
+    /** Zakończone pociągnięcia nagrane raz i składane z tekstury GPU w kolejnych klatkach. */
+    @RequiresApi(Build.VERSION_CODES.Q)
+    private static final class StrokeLayer {
+        private final RenderNode node = new RenderNode("strokes");
+
+        StrokeLayer() {
+            node.setUseCompositingLayer(true, null);
+        }
+
+        void record(DrawView view, int width, int height) {
+            node.setPosition(0, 0, width, height);
+            RecordingCanvas canvas = node.beginRecording(width, height);
+            try {
+                view.drawFinishedStrokes(canvas);
+            } finally {
+                node.endRecording();
+            }
+        }
+
+        void draw(Canvas canvas) {
+            canvas.drawRenderNode(node);
+        }
+
+        void discard() {
+            node.discardDisplayList();
+        }
     }
 
     @Override
@@ -57,28 +157,111 @@ public class DrawView extends View {
 
         switch (event.getAction()) {
             case MotionEvent.ACTION_DOWN:
+                // Zdarzenia tego gestu trafiają do nas od razu, bez czekania na vsync
+                requestUnbufferedDispatch(event);
+                finishStroke();
                 drawPath.moveTo(touchX, touchY);
+                drawPath.lineTo(touchX, touchY);
+                strokeStore.beginStroke(touchX, touchY, STROKE_WIDTH);
+                addSegment(touchX, touchY, touchX, touchY);
                 break;
             case MotionEvent.ACTION_MOVE:
-                drawPath.lineTo(touchX, touchY);
+                // Próbki zebrane między klatkami: bez nich szybkie pociągnięcia są kanciaste
+                for (int h = 0; h < event.getHistorySize(); h++) {
+                    addPoint(event.getHistoricalX(h), event.getHistoricalY(h));
+                }
+                addPoint(touchX, touchY);
                 break;
             case MotionEvent.ACTION_UP:
-                drawCanvas.drawPath(drawPath, drawPaint);
-                drawPath.reset();
+            case MotionEvent.ACTION_CANCEL:
+                finishStroke();
                 break;
             default:
                 return false;
         }
+        if (pendingEventTime < 0) {
+            pendingEventTime = event.getHistorySize() > 0 ? event.getHistoricalEventTime(0) : event.getEventTime();
+        }
         invalidate();
+        boolean strokeEnded = event.getAction() == MotionEvent.ACTION_UP
+                || event.getAction() == MotionEvent.ACTION_CANCEL;
+        if (!strokeEnded && drawingChangedListener != null) {
+            drawingChangedListener.onDrawingChanged();
+        }
         return true;
     }
 
+    private void finishStroke() {
+        if (strokeStore.endStroke()) {
+            strokePaths.add(drawPath);
+            drawPath = new Path();
+            strokeLayerStale = true;
+        }
+    }
+
+    private void addPoint(float x, float y) {
+        drawPath.lineTo(x, y);
+        strokeStore.addPoint(x, y);
+        addSegment(lastX, lastY, x, y);
+    }
+
+    private void addSegment(float x0, float y0, float x1, float y1) {
+        coverageGrid.addSegment(x0, y0, x1, y1, STROKE_WIDTH);
+        lastX = x1;
+        lastY = y1;
+    }
+
     public void clearCanvas() {
-        drawCanvas.drawColor(Color.WHITE);
+        strokeStore.clear();
+        strokePaths.clear();
+        drawPath.reset();
+        coverageGrid.clear();
+        strokeLayerStale = true;
         invalidate();
+        if (drawingChangedListener != null) drawingChangedListener.onDrawingChanged();
+    }
+
+    /** Cofa ostatnie zakończone pociągnięcie; false, gdy nie ma czego cofać lub trwa rysowanie. */
+    public boolean undo() {
+        if (strokeStore.undo() == null) return false;
+        strokePaths.remove(strokePaths.size() - 1);
+        onStrokesReplaced();
+        return true;
+    }
+
+    public boolean redo() {
+        StrokeStore.Stroke stroke = strokeStore.redo();
+        if (stroke == null) return false;
+        strokePaths.add(toPath(stroke));
+        onStrokesReplaced();
+        return true;
+    }
+
+    private void onStrokesReplaced() {
+        strokeStore.rasterize(coverageGrid);
+        strokeLayerStale = true;
+        invalidate();
+        if (drawingChangedListener != null) drawingChangedListener.onDrawingChanged();
+    }
+
+    private static Path toPath(StrokeStore.Stroke stroke) {
+        Path path = new Path();
+        path.moveTo(stroke.getX(0), stroke.getY(0));
+        for (int i = 0; i < stroke.getPointCount(); i++) {
+            path.lineTo(stroke.getX(i), stroke.getY(i));
+        }
+        return path;
+    }
+
+    public void setOnDrawingChangedListener(OnDrawingChangedListener listener) {
+        drawingChangedListener = listener;
+    }
+
+    public void setOnTouchLatencyListener(OnTouchLatencyListener listener) {
+        touchLatencyListener = listener;
     }
 
-    public Bitmap getBitmap() {
-        return canvasBitmap;
+    CoverageGrid getCoverageGrid() {
+        return coverageGrid;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,59 @@
+package edu.jkiryla.aiexplainer;
+
+import org.tensorflow.lite.Interpreter;
+
+/**
+ * Ustawienia wykonania interpretera na CPU: liczba wątków i delegat XNNPACK.
+ * Zapisywane jako krótki tekst, np. "threads=4;xnnpack=true".
+ */
+final class ExecutionConfig {
+
+    /** Ustawienia domyślne TFLite: liczbę wątków wybiera biblioteka, XNNPACK włączony. */
+    static final ExecutionConfig DEFAULT = new ExecutionConfig(-1, true);
+
+    final int numThreads;
+    final boolean useXnnpack;
+
+    ExecutionConfig(int numThreads, boolean useXnnpack) {
+        this.numThreads = numThreads;
+        this.useXnnpack = useXnnpack;
+    }
+
+    Interpreter.Options toOptions() {
+        Interpreter.Options options = new Interpreter.Options();
+        options.setNumThreads(numThreads);
+        options.setUseXNNPACK(useXnnpack);
+        return options;
+    }
+
+    String encode() {
+        return "threads=" + numThreads + ";xnnpack=" + useXnnpack;
+    }
+
+    /** Odczytuje zapis z {@link #encode()}; null, jeśli tekst jest pusty lub uszkodzony. */
+    static ExecutionConfig decode(String encoded) {
+        if (encoded == null) return null;
+        int threads = Integer.MIN_VALUE;
+        Boolean xnnpack = null;
+        for (String part : encoded.split(";")) {
+            String[] keyValue = part.split("=", 2);
+            if (keyValue.length != 2) return null;
+            if (keyValue[0].equals("threads")) {
+                try {
+                    threads = Integer.parseInt(keyValue[1]);
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            } else if (keyValue[0].equals("xnnpack")) {
+                xnnpack = Boolean.parseBoolean(keyValue[1]);
+            }
+        }
+        if (threads == Integer.MIN_VALUE || xnnpack == null) return null;
+        return new ExecutionConfig(threads, xnnpack);
+    }
+
+    @Override
+    public String toString() {
+        return (numThreads > 0 ? numThreads + " wątk." : "auto") + (useXnnpack ? ", XNNPACK" : ", bez XNNPACK");
+    }
+}
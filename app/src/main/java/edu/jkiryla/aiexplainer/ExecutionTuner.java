@@ -0,0 +1,114 @@
+package edu.jkiryla.aiexplainer;
+
+import android.os.SystemClock;
+
+import org.tensorflow.lite.Interpreter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Mierzy czas wnioskowania modelu dla kilku liczb wątków z XNNPACK i bez niego
+ * i wybiera najszybsze ustawienia dla tego urządzenia.
+ */
+final class ExecutionTuner {
+
+    private static final int WARMUP_RUNS = 3;
+    private static final int TIMED_RUNS = 15;
+
+    static final class Measurement {
+        final ExecutionConfig config;
+        final long medianMicros;
+
+        Measurement(ExecutionConfig config, long medianMicros) {
+            this.config = config;
+            this.medianMicros = medianMicros;
+        }
+    }
+
+    static final class Result {
+        final ExecutionConfig best;
+        final List<Measurement> measurements;
+
+        Result(ExecutionConfig best, List<Measurement> measurements) {
+            this.best = best;
+            this.measurements = measurements;
+        }
+
+        String toReport(String title) {
+            StringBuilder report = new StringBuilder(title).append('\n');
+            for (Measurement m : measurements) {
+                report.append(String.format(Locale.US, "  %-26s %8d us%s%n",
+                        m.config.encode(), m.medianMicros, m.config == best ? "  <- wybrane" : ""));
+            }
+            return report.toString();
+        }
+    }
+
+    private ExecutionTuner() {
+    }
+
+    static List<ExecutionConfig> candidates(int cores) {
+        List<ExecutionConfig> candidates = new ArrayList<>();
+        for (int threads : new int[]{1, 2, 4, cores}) {
+            if (threads > cores) continue;
+            for (boolean xnnpack : new boolean[]{true, false}) {
+                boolean duplicate = false;
+                for (ExecutionConfig c : candidates) {
+                    if (c.numThreads == threads && c.useXnnpack == xnnpack) duplicate = true;
+                }
+                if (!duplicate) candidates.add(new ExecutionConfig(threads, xnnpack));
+            }
+        }
+        return candidates;
+    }
+
+    /** Wywoływać poza wątkiem UI: każdy kandydat to osobny interpreter i kilkanaście wywołań. */
+    static Result tune(ByteBuffer model) {
+        List<Measurement> measurements = new ArrayList<>();
+        Measurement best = null;
+        for (ExecutionConfig config : candidates(Runtime.getRuntime().availableProcessors())) {
+            Measurement measurement;
+            try {
+                measurement = new Measurement(config, measure(model, config));
+            } catch (RuntimeException e) {
+                // Np. XNNPACK nieobsługujący któregoś operatora; taki kandydat odpada
+                continue;
+            }
+            measurements.add(measurement);
+            if (best == null || measurement.medianMicros < best.medianMicros) best = measurement;
+        }
+        return new Result(best != null ? best.config : ExecutionConfig.DEFAULT, measurements);
+    }
+
+    private static long measure(ByteBuffer model, ExecutionConfig config) {
+        Interpreter interpreter = new Interpreter(model, config.toOptions());
+        try {
+            ByteBuffer input = ByteBuffer.allocateDirect(interpreter.getInputTensor(0).numBytes())
+                    .order(ByteOrder.nativeOrder());
+            ByteBuffer output = ByteBuffer.allocateDirect(interpreter.getOutputTensor(0).numBytes())
+                    .order(ByteOrder.nativeOrder());
+            for (int i = 0; i < WARMUP_RUNS; i++) {
+                input.rewind();
+                output.rewind();
+                interpreter.run(input, output);
+            }
+            long[] micros = new long[TIMED_RUNS];
+            for (int i = 0; i < TIMED_RUNS; i++) {
+                input.rewind();
+                output.rewind();
+                long start = SystemClock.elapsedRealtimeNanos();
+                interpreter.run(input, output);
+                micros[i] = (SystemClock.elapsedRealtimeNanos() - start) / 1000;
+            }
+            Arrays.sort(micros);
+            return micros[TIMED_RUNS / 2];
+        } finally {
+            interpreter.close();
+        }
+    }
+}
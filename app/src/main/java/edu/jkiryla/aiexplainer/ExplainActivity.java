@@ -1,33 +1,59 @@
 package edu.jkiryla.aiexplainer;
 
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.Color;
 import android.os.Bundle;
+import android.util.Log;
+import android.util.LruCache;
 import android.widget.ImageButton;
 import android.widget.ImageView;
 import android.widget.TextView;
 import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
+
+import edu.jkiryla.aiexplainer.core.ConvolutionEngine;
+import edu.jkiryla.aiexplainer.core.FeatureMapTiler;
+import edu.jkiryla.aiexplainer.core.OcclusionMap;
+
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class ExplainActivity extends AppCompatActivity {
 
+    /** Obraz warstwy w pełnej rozdzielczości, liczony dopiero gdy warstwa jest potrzebna. */
+    private interface LayerRenderer {
+        Bitmap render();
+    }
+
     private static class LayerData {
         String name;
-        Bitmap image;
+        LayerRenderer renderer;
         String description;
 
-        LayerData(String name, Bitmap image, String description) {
+        LayerData(String name, LayerRenderer renderer, String description) {
             this.name = name;
-            this.image = image;
+            this.renderer = renderer;
             this.description = description;
         }
     }
 
-    private List<LayerData> layers = new ArrayList<>();
-    private int currentLayerIndex = 0;
+    private static final int DISPLAY_SIZE = 300;
+    // Ile warstw po obu stronach bieżącej przygotowujemy z wyprzedzeniem
+    private static final int PREFETCH_DISTANCE = 1;
+
+    // Czytane także z wątku renderującego, żeby pomijać warstwy, od których użytkownik już odszedł
+    private volatile List<LayerData> layers = new ArrayList<>();
+    private boolean layersReady = false;
+    private volatile int currentLayerIndex = 0;
+
+    private ExecutorService layerExecutor;
+    private LruCache<Integer, Bitmap> displayCache;
+    // Indeksy warstw, które są w kolejce do renderowania (tylko wątek główny)
+    private final Set<Integer> pendingRenders = new HashSet<>();
 
     private long lastToastTime = 0;
     private static final int TOAST_COOLDOWN = 5000; // 5 sekund
@@ -36,6 +62,8 @@ public class ExplainActivity extends AppCompatActivity {
     private TextView tvLayerName, tvLayerDesc, tvIndicator;
     private ImageView ivLayerVisual;
 
+    private ExplanationSessionStore.Session session;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -54,13 +82,49 @@ public class ExplainActivity extends AppCompatActivity {
         String title = getIntent().getStringExtra("title");
         if (title != null) tvTitle.setText(title);
 
-        byte[] byteArray = getIntent().getByteArrayExtra("image_data");
-        if (byteArray != null) {
-            Bitmap originalBitmap = BitmapFactory.decodeByteArray(byteArray, 0, byteArray.length);
-            generateLayers(originalBitmap);
+        ExplanationSessionStore store = ExplanationSessionStore.getInstance();
+        String sessionId = getIntent().getStringExtra(ExplanationSessionStore.EXTRA_SESSION_ID);
+        if (savedInstanceState == null) {
+            if (sessionId != null) session = store.acquire(sessionId);
+        } else {
+            // Po zmianie konfiguracji sesja wciąż jest przejęta; po śmierci procesu odtwarzamy ją z tensora
+            sessionId = savedInstanceState.getString(ExplanationSessionStore.EXTRA_SESSION_ID, sessionId);
+            if (sessionId != null) session = store.get(sessionId);
+            if (session == null) session = store.restoreFromBundle(savedInstanceState);
         }
 
-        updateUI();
+        // Gotowe obrazy do wyświetlenia, ograniczone do 1/8 pamięci sterty
+        int cacheBytes = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 8);
+        displayCache = new LruCache<Integer, Bitmap>(cacheBytes) {
+            @Override
+            protected int sizeOf(Integer key, Bitmap value) {
+                return value.getByteCount();
+            }
+        };
+        layerExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "ExplainLayers"));
+
+        if (session != null) {
+            // Warstwa wejściowa jest gotowa od razu, reszta powstaje w tle
+            Bitmap inputBitmap = session.bitmap;
+            layers.add(createInputLayer(inputBitmap));
+            updateUI();
+
+            ModelRegistry.Model model = session.model;
+            float[] input = session.tensor;
+            layerExecutor.execute(() -> {
+                List<LayerData> generated = generateLayers(inputBitmap, model, input);
+                runOnUiThread(() -> {
+                    if (isDestroyed()) return;
+                    // Warstwa wejściowa ma ten sam indeks, więc jej obraz w pamięci podręcznej zostaje
+                    layers = generated;
+                    layersReady = true;
+                    pendingRenders.clear();
+                    updateUI();
+                });
+            });
+        } else {
+            layersReady = true;
+        }
 
         btnBack.setOnClickListener(v -> finish());
 
@@ -77,12 +141,30 @@ public class ExplainActivity extends AppCompatActivity {
             if (currentLayerIndex < layers.size() - 1) {
                 currentLayerIndex++;
                 updateUI();
+            } else if (!layersReady) {
+                showToastWithCooldown("Trwa przygotowywanie kolejnych warstw...");
             } else {
                 showToastWithCooldown("To jest Warstwa wyjściowa!");
             }
         });
     }
 
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        if (session != null) ExplanationSessionStore.saveToBundle(session, outState);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        layerExecutor.shutdownNow();
+        displayCache.evictAll();
+        if (session != null && !isChangingConfigurations()) {
+            ExplanationSessionStore.getInstance().release(session.id);
+        }
+    }
+
     private void showToastWithCooldown(String message) {
         long currentTime = System.currentTimeMillis();
 
@@ -102,101 +184,248 @@ public class ExplainActivity extends AppCompatActivity {
         tvLayerName.setText(currentData.name);
         tvLayerDesc.setText(currentData.description);
 
-        Bitmap displayBitmap = Bitmap.createScaledBitmap(currentData.image, 300, 300, false);
+        Bitmap displayBitmap = displayCache.get(currentLayerIndex);
+        // Do czasu wyrenderowania warstwy pole obrazu zostaje puste
         ivLayerVisual.setImageBitmap(displayBitmap);
+        if (displayBitmap == null) requestRender(currentLayerIndex);
+
+        int from = Math.max(0, currentLayerIndex - PREFETCH_DISTANCE);
+        int to = Math.min(layers.size() - 1, currentLayerIndex + PREFETCH_DISTANCE);
+        for (int i = from; i <= to; i++) {
+            if (displayCache.get(i) == null) requestRender(i);
+        }
 
         tvIndicator.setText((currentLayerIndex + 1) + " / " + layers.size());
     }
 
-    private void generateLayers(Bitmap inputBitmap) {
-        layers.add(new LayerData(
+    private void requestRender(int index) {
+        if (!pendingRenders.add(index)) return;
+        List<LayerData> requestedLayers = layers;
+        LayerData layer = requestedLayers.get(index);
+        layerExecutor.execute(() -> {
+            // Użytkownik mógł już przejść dalej; zbyt odległe warstwy pomijamy
+            Bitmap display = isWanted(requestedLayers, index) ? renderForDisplay(layer) : null;
+            runOnUiThread(() -> {
+                if (isDestroyed() || layers != requestedLayers) return;
+                pendingRenders.remove(index);
+                if (display == null) return;
+                displayCache.put(index, display);
+                if (index == currentLayerIndex) ivLayerVisual.setImageBitmap(display);
+            });
+        });
+    }
+
+    // Wywoływane z wątku tła; odczyt currentLayerIndex bez synchronizacji wystarcza jako wskazówka
+    private boolean isWanted(List<LayerData> requestedLayers, int index) {
+        return layers == requestedLayers && Math.abs(index - currentLayerIndex) <= PREFETCH_DISTANCE;
+    }
+
+    private Bitmap renderForDisplay(LayerData layer) {
+        Bitmap full = layer.renderer.render();
+        Bitmap display = Bitmap.createScaledBitmap(full, DISPLAY_SIZE, DISPLAY_SIZE, false);
+        if (display != full && (session == null || full != session.bitmap)) full.recycle();
+        return display;
+    }
+
+    private LayerData createInputLayer(Bitmap inputBitmap) {
+        return new LayerData(
                 "Warstwa wejściowa",
-                inputBitmap,
+                () -> inputBitmap,
                 "To surowe dane, które widzi model. Każdy piksel ma wartość liczbową odpowiadającą jasności."
-        ));
+        );
+    }
+
+    private LayerData createOcclusionLayer(ModelRegistry.Model model, float[] input) {
+        return new LayerData(
+                "Mapa okluzji",
+                () -> renderOcclusion(model, input),
+                "Model ogląda obraz z kolejno zasłanianymi fragmentami. Czerwone obszary to te, których zasłonięcie "
+                        + "najbardziej obniża pewność wybranej klasy, niebieskie ją podnoszą."
+        );
+    }
+
+    private Bitmap renderOcclusion(ModelRegistry.Model model, float[] input) {
+        try (OcclusionExplainer explainer = new OcclusionExplainer(this, model)) {
+            OcclusionExplainer.Result result = explainer.explain(input);
+            Log.i("ExplainActivity", "Occlusion map: " + result.variants + " variants in " + result.invocations
+                    + " invocation(s), " + result.nanos / 1_000_000 + " ms");
+            int size = (int) Math.round(Math.sqrt(input.length));
+            int[] pixels = new int[input.length];
+            OcclusionMap.toArgb(result.heat, input, pixels);
+            return Bitmap.createBitmap(pixels, size, size, Bitmap.Config.ARGB_8888);
+        } catch (IOException | RuntimeException e) {
+            Log.e("ExplainActivity", "Occlusion map failed", e);
+            int size = (int) Math.round(Math.sqrt(input.length));
+            return ExplanationSessionStore.renderTensor(model, size, size, input);
+        }
+    }
+
+    /**
+     * Buduje listę warstw (bez renderowania obrazów); wywoływane w wątku tła. Dla modelu lista
+     * i obrazy warstw pochodzą z {@link ExplanationCache}, a aktywacje są liczone dopiero przy
+     * pierwszym braku wpisu.
+     */
+    private List<LayerData> generateLayers(Bitmap inputBitmap, ModelRegistry.Model model, float[] input) {
+        ComputedLayers computed = new ComputedLayers(inputBitmap, model, input);
+        if (model == null) return computed.get();
+
+        ExplanationCache cache = ExplanationCache.getInstance(this);
+        String key = cache.explanationKey(model, input);
+        List<ExplanationCache.LayerInfo> infos = cache.getLayers(key);
+        if (infos == null) {
+            List<LayerData> fresh = computed.get();
+            infos = new ArrayList<>(fresh.size());
+            for (LayerData layer : fresh) infos.add(new ExplanationCache.LayerInfo(layer.name, layer.description));
+            // Zapasowe filtry Sobela nie opisują modelu, więc ich nie utrwalamy
+            if (!computed.fromModel) return fresh;
+            cache.putLayers(key, infos);
+        }
+
+        List<LayerData> generated = new ArrayList<>(infos.size());
+        generated.add(createInputLayer(inputBitmap));
+        for (int i = 1; i < infos.size(); i++) {
+            int index = i;
+            ExplanationCache.LayerInfo info = infos.get(i);
+            generated.add(new LayerData(info.name, () -> renderCached(cache, key, index, computed), info.description));
+        }
+        return generated;
+    }
+
+    private static Bitmap renderCached(ExplanationCache cache, String key, int index, ComputedLayers computed) {
+        Bitmap image = cache.getLayerImage(key, index);
+        if (image != null) return image;
+        List<LayerData> fresh = computed.get();
+        // Lista z dysku mogła powstać w innym przebiegu; poza zakresem pokazujemy wejście
+        image = fresh.get(index < fresh.size() ? index : 0).renderer.render();
+        if (computed.fromModel && index < fresh.size()) cache.putLayerImage(key, index, image);
+        return image;
+    }
+
+    /** Warstwy liczone od zera, raz i dopiero wtedy, gdy brakuje ich w pamięci podręcznej. */
+    private final class ComputedLayers {
+        private final Bitmap inputBitmap;
+        private final ModelRegistry.Model model;
+        private final float[] input;
+        private List<LayerData> layers;
+        // Czy warstwy pochodzą z aktywacji modelu, a nie z zapasowych filtrów
+        volatile boolean fromModel;
+
+        ComputedLayers(Bitmap inputBitmap, ModelRegistry.Model model, float[] input) {
+            this.inputBitmap = inputBitmap;
+            this.model = model;
+            this.input = input;
+        }
+
+        synchronized List<LayerData> get() {
+            if (layers != null) return layers;
+            layers = new ArrayList<>();
+            layers.add(createInputLayer(inputBitmap));
+
+            if (model != null) {
+                layers.add(createOcclusionLayer(model, input));
+                try {
+                    List<ActivationExtractor.Activation> activations = ActivationExtractor.getCached(model, input);
+                    if (activations == null) {
+                        try (ActivationExtractor extractor = new ActivationExtractor(ExplainActivity.this, model)) {
+                            activations = extractor.extract(input);
+                        }
+                    }
+                    addActivationLayers(layers, activations);
+                    fromModel = true;
+                    return layers;
+                } catch (IOException | RuntimeException e) {
+                    Log.e("ExplainActivity", "Activation extraction failed, falling back to edge filters", e);
+                }
+            }
+            addFilterLayers(layers, inputBitmap);
+            return layers;
+        }
+    }
+
+    private static void addActivationLayers(List<LayerData> layers, List<ActivationExtractor.Activation> activations) {
+        int convIndex = 0;
+        int denseIndex = 0;
+        for (int i = 0; i < activations.size(); i++) {
+            ActivationExtractor.Activation activation = activations.get(i);
+            LayerRenderer image = () -> {
+                FeatureMapTiler.Tiles tiles = FeatureMapTiler.render(activation.values, activation.shape);
+                return Bitmap.createBitmap(tiles.pixels, tiles.width, tiles.height, Bitmap.Config.ARGB_8888);
+            };
+            int[] shape = activation.shape;
+
+            if (i == activations.size() - 1) {
+                layers.add(new LayerData(
+                        "Warstwa wyjściowa",
+                        image,
+                        "Wyjście modelu: jedno pole na klasę. Najjaśniejsze pole to klasa, którą model wybrał."
+                ));
+            } else if (activation.isConvolution()) {
+                convIndex++;
+                layers.add(new LayerData(
+                        "Konwolucja " + convIndex + " (" + shape[1] + "x" + shape[2] + ", " + shape[3] + " filtrów)",
+                        image,
+                        "Każdy kafelek to mapa aktywacji jednego filtra. Jasne miejsca pokazują, gdzie filtr znalazł swoją cechę: "
+                                + "w pierwszych warstwach proste krawędzie, w głębszych coraz bardziej złożone kształty."
+                ));
+            } else {
+                denseIndex++;
+                layers.add(new LayerData(
+                        "Warstwa gęsta " + denseIndex + " (" + activation.values.length + " neuronów)",
+                        image,
+                        "Każde pole to jeden neuron. Neurony łączą cechy znalezione przez konwolucje w decyzję o klasie."
+                ));
+            }
+        }
+    }
+
+    private static void addFilterLayers(List<LayerData> layers, Bitmap inputBitmap) {
+        SobelResponses sobel = new SobelResponses(inputBitmap);
 
-        float[][] verticalFilter = {
-                {-1, 0, 1},
-                {-2, 0, 2},
-                {-1, 0, 1}
-        };
-        Bitmap verticalMap = applyConvolution(inputBitmap, verticalFilter);
         layers.add(new LayerData(
                 "Warstwa 1",
-                verticalMap,
+                () -> sobel.render(0),
                 "Wykrywanie cech pionowych. Neurony w tej warstwie aktywują się tam, gdzie widzą pionowe krawędzie."
         ));
 
-        float[][] horizontalFilter = {
-                {-1, -2, -1},
-                { 0,  0,  0},
-                { 1,  2,  1}
-        };
-        Bitmap horizontalMap = applyConvolution(inputBitmap, horizontalFilter);
         layers.add(new LayerData(
                 "Warstwa 2",
-                horizontalMap,
+                () -> sobel.render(1),
                 "Wykrywanie cech poziomych. Neurony reagują na górne i dolne krawędzie obiektu."
         ));
 
-        Bitmap combinedMap = combineBitmaps(verticalMap, horizontalMap);
         layers.add(new LayerData(
                 "Warstwa wyjściowa",
-                combinedMap,
+                () -> sobel.render(2),
                 "Model łączy wykryte proste cechy (linie) w bardziej złożone kształty, co pozwala mu podjąć decyzję."
         ));
     }
 
-    private Bitmap applyConvolution(Bitmap src, float[][] kernel) {
-        int width = src.getWidth();
-        int height = src.getHeight();
-        Bitmap result = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    /** Odpowiedzi obu filtrów Sobela i ich połączenie, liczone razem przy pierwszym użyciu. */
+    private static final class SobelResponses {
+        private final Bitmap inputBitmap;
+        private float[][] responses;
 
-        int[] pixels = new int[width * height];
-        src.getPixels(pixels, 0, width, 0, 0, width, height);
-        int[] newPixels = new int[width * height];
-
-        for (int y = 1; y < height - 1; y++) {
-            for (int x = 1; x < width - 1; x++) {
-                float sum = 0.0f;
-
-                for (int ky = -1; ky <= 1; ky++) {
-                    for (int kx = -1; kx <= 1; kx++) {
-                        int pixel = pixels[(y + ky) * width + (x + kx)];
-                        int val = (pixel >> 16) & 0xFF; // Pobranie kanału R (obraz czarno-biały)
-                        sum += val * kernel[ky + 1][kx + 1];
-                    }
-                }
-
-                int finalVal = (int) Math.abs(sum);
-                if (finalVal > 255) finalVal = 255;
-
-                newPixels[y * width + x] = Color.rgb(finalVal, finalVal, finalVal);
-            }
+        SobelResponses(Bitmap inputBitmap) {
+            this.inputBitmap = inputBitmap;
         }
-        result.setPixels(newPixels, 0, width, 0, 0, width, height);
-        return result;
-    }
 
-    private Bitmap combineBitmaps(Bitmap b1, Bitmap b2) {
-        int width = b1.getWidth();
-        int height = b1.getHeight();
-        Bitmap result = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-
-        int[] p1 = new int[width*height];
-        int[] p2 = new int[width*height];
-        int[] out = new int[width*height];
-
-        b1.getPixels(p1, 0, width, 0, 0, width, height);
-        b2.getPixels(p2, 0, width, 0, 0, width, height);
-
-        for(int i=0; i<p1.length; i++) {
-            int v1 = (p1[i] >> 16) & 0xFF;
-            int v2 = (p2[i] >> 16) & 0xFF;
-            int max = Math.max(v1, v2);
-            out[i] = Color.rgb(max, max, max);
+        synchronized Bitmap render(int index) {
+            int width = inputBitmap.getWidth();
+            int height = inputBitmap.getHeight();
+            int[] pixels = new int[width * height];
+            if (responses == null) {
+                inputBitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+                float[] luma = new float[width * height];
+                ConvolutionEngine.lumaFromArgb(pixels, luma);
+
+                // Oba filtry i ich połączenie w jednym przejściu po obrazie
+                responses = new float[][]{new float[width * height], new float[width * height], new float[width * height]};
+                ConvolutionEngine.shared().convolveFused(luma, width, height,
+                        new ConvolutionEngine.Kernel[]{ConvolutionEngine.SOBEL_X, ConvolutionEngine.SOBEL_Y},
+                        new float[][]{responses[0], responses[1]}, responses[2]);
+            }
+            ConvolutionEngine.toArgb(responses[index], pixels);
+            return Bitmap.createBitmap(pixels, width, height, Bitmap.Config.ARGB_8888);
         }
-        result.setPixels(out, 0, width, 0, 0, width, height);
-        return result;
     }
-}
\ No newline at end of file
+}
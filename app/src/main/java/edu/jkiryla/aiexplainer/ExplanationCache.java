@@ -0,0 +1,192 @@
+package edu.jkiryla.aiexplainer;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import edu.jkiryla.aiexplainer.core.BlobCache;
+import edu.jkiryla.aiexplainer.core.DiskBlobStore;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Przewidywania i wyrenderowane warstwy wyjaśnień adresowane treścią: klucz to skrót
+ * przetworzonego tensora wejściowego i wersji modelu ({@link ModelRegistry#versionKey}).
+ * Pamięć podręczna ma dwa poziomy ({@link BlobCache}): LRU w pamięci i pliki w cacheDir,
+ * więc powtórne wyjaśnienie tego samego wejścia to odczyt, także po restarcie aplikacji.
+ * Dysk jest otwierany przy pierwszym użyciu, dlatego metod nie należy wołać z wątku głównego.
+ * Zapisy trafiają na osobny wątek, żeby nie wydłużać pracy wątku modelu; wpis jest widoczny
+ * dla odczytów dopiero po zapisaniu.
+ */
+final class ExplanationCache implements ComponentCallbacks2 {
+
+    private static final String TAG = "ExplanationCache";
+    private static final String CACHE_DIR = "explanation_cache";
+    private static final long DISK_BYTES = 64L * 1024 * 1024;
+
+    /** Nazwa i opis warstwy, bez obrazu. */
+    static final class LayerInfo {
+        final String name;
+        final String description;
+
+        LayerInfo(String name, String description) {
+            this.name = name;
+            this.description = description;
+        }
+    }
+
+    private static volatile ExplanationCache instance;
+
+    private final Context appContext;
+    private final ModelRegistry registry;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> new Thread(r, TAG));
+    private BlobCache blobs;
+
+    private ExplanationCache(Context context) {
+        appContext = context.getApplicationContext();
+        registry = ModelRegistry.getInstance(appContext);
+        appContext.registerComponentCallbacks(this);
+    }
+
+    static ExplanationCache getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ExplanationCache.class) {
+                if (instance == null) {
+                    instance = new ExplanationCache(context);
+                }
+            }
+        }
+        return instance;
+    }
+
+    private synchronized BlobCache blobs() {
+        if (blobs == null) {
+            DiskBlobStore disk = new DiskBlobStore(new File(appContext.getCacheDir(), CACHE_DIR), DISK_BYTES);
+            blobs = new BlobCache(Runtime.getRuntime().maxMemory() / 16, disk);
+        }
+        return blobs;
+    }
+
+    /** Klucz przewidywania dla wariantu, który faktycznie liczy wynik. */
+    String predictionKey(ModelRegistry.Model model, float[] input) {
+        ModelRegistry.Variant variant = registry.getActiveVariant(model);
+        if (variant == null) variant = ModelRegistry.Variant.FLOAT32;
+        return BlobCache.contentKey("prediction:" + registry.versionKey(model, variant), input);
+    }
+
+    /** Klucz wyjaśnienia; warstwy zawsze liczy interpreter float32. */
+    String explanationKey(ModelRegistry.Model model, float[] input) {
+        return BlobCache.contentKey("explanation:" + registry.versionKey(model, ModelRegistry.Variant.FLOAT32), input);
+    }
+
+    /** Kopiuje zapisane przewidywanie do {@code out}; false przy braku wpisu. */
+    boolean getPrediction(String key, float[] out) {
+        ByteBuffer value = blobs().get(key);
+        if (value == null || value.remaining() != 4 * out.length) return false;
+        value.asFloatBuffer().get(out);
+        return true;
+    }
+
+    void putPrediction(String key, float[] probabilities) {
+        ByteBuffer value = ByteBuffer.allocate(4 * probabilities.length);
+        value.asFloatBuffer().put(probabilities);
+        put(key, value.array());
+    }
+
+    /** Lista warstw zapisanego wyjaśnienia albo null. */
+    List<LayerInfo> getLayers(String key) {
+        ByteBuffer value = blobs().get(key);
+        if (value == null) return null;
+        // Lista ma kilkaset bajtów; kopia upraszcza odczyt napisów UTF
+        byte[] bytes = new byte[value.remaining()];
+        value.get(bytes);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            int count = in.readInt();
+            List<LayerInfo> layers = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) layers.add(new LayerInfo(in.readUTF(), in.readUTF()));
+            return layers;
+        } catch (IOException e) {
+            Log.e(TAG, "Corrupt layer list " + key, e);
+            return null;
+        }
+    }
+
+    void putLayers(String key, List<LayerInfo> layers) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(layers.size());
+            for (LayerInfo layer : layers) {
+                out.writeUTF(layer.name);
+                out.writeUTF(layer.description);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // zapis do pamięci nie zgłasza błędów
+        }
+        put(key, bytes.toByteArray());
+    }
+
+    /** Obraz warstwy {@code index} w pełnej rozdzielczości albo null. */
+    Bitmap getLayerImage(String key, int index) {
+        ByteBuffer buffer = blobs().get(key + "-" + index);
+        if (buffer == null || buffer.remaining() < 8) return null;
+        int width = buffer.getInt();
+        int height = buffer.getInt();
+        if (buffer.remaining() != 4 * width * height) return null;
+        int[] pixels = new int[width * height];
+        buffer.asIntBuffer().get(pixels);
+        return Bitmap.createBitmap(pixels, width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    void putLayerImage(String key, int index, Bitmap image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = new int[width * height];
+        image.getPixels(pixels, 0, width, 0, 0, width, height);
+        ByteBuffer value = ByteBuffer.allocate(8 + 4 * pixels.length);
+        value.putInt(width).putInt(height);
+        value.asIntBuffer().put(pixels);
+        put(key + "-" + index, value.array());
+    }
+
+    private void put(String key, byte[] value) {
+        writer.execute(() -> {
+            try {
+                blobs().put(key, value);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to store " + key, e);
+            }
+        });
+    }
+
+    // Przy presji pamięci zwalniamy tylko poziom w pamięci; pliki zostają
+    @Override
+    public void onTrimMemory(int level) {
+        if (level < TRIM_MEMORY_UI_HIDDEN) return;
+        synchronized (this) {
+            if (blobs != null) blobs.clearMemory();
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+    }
+}
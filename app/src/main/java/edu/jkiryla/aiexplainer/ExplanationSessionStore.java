@@ -0,0 +1,132 @@
+package edu.jkiryla.aiexplainer;
+
+import android.graphics.Bitmap;
+import android.os.Bundle;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Przekazuje dane do wyjaśnienia między aktywnościami w obrębie procesu, bez kodowania PNG
+ * i bez limitu rozmiaru transakcji Binder. Sesje są liczone referencjami: usuwa je ostatnie
+ * {@link #release}. Na wypadek śmierci procesu sesję można zapisać do {@link Bundle}
+ * jako surowy tensor i odtworzyć ją z niego.
+ */
+final class ExplanationSessionStore {
+
+    static final String EXTRA_SESSION_ID = "session_id";
+
+    private static final String KEY_MODEL = "session_model";
+    private static final String KEY_WIDTH = "session_width";
+    private static final String KEY_HEIGHT = "session_height";
+    private static final String KEY_TENSOR = "session_tensor";
+
+    // Sesje utworzone, ale jeszcze nieodebrane przez ExplainActivity
+    private static final int MAX_PENDING = 4;
+
+    static final class Session {
+        final String id;
+        final ModelRegistry.Model model;
+        final int width;
+        final int height;
+        final float[] tensor;
+        final Bitmap bitmap;
+        private int refCount;
+
+        private Session(String id, ModelRegistry.Model model, int width, int height, float[] tensor, Bitmap bitmap) {
+            this.id = id;
+            this.model = model;
+            this.width = width;
+            this.height = height;
+            this.tensor = tensor;
+            this.bitmap = bitmap;
+        }
+    }
+
+    private static final ExplanationSessionStore instance = new ExplanationSessionStore();
+
+    private final Map<String, Session> sessions = new LinkedHashMap<>();
+
+    private ExplanationSessionStore() {
+    }
+
+    static ExplanationSessionStore getInstance() {
+        return instance;
+    }
+
+    /**
+     * Rejestruje dokładny tensor wejściowy modelu (przejmując tablicę) oraz jego podgląd.
+     * Jeśli {@code bitmap} jest null, podgląd zostanie wygenerowany z tensora.
+     */
+    synchronized String put(ModelRegistry.Model model, int width, int height, float[] tensor, Bitmap bitmap) {
+        String id = UUID.randomUUID().toString();
+        if (bitmap == null) bitmap = renderTensor(model, width, height, tensor);
+        sessions.put(id, new Session(id, model, width, height, tensor, bitmap));
+        evictStalePending();
+        return id;
+    }
+
+    synchronized Session acquire(String id) {
+        Session session = sessions.get(id);
+        if (session != null) session.refCount++;
+        return session;
+    }
+
+    /** Zwraca sesję bez zmiany licznika, dla aktywności odtworzonej po zmianie konfiguracji. */
+    synchronized Session get(String id) {
+        return sessions.get(id);
+    }
+
+    synchronized void release(String id) {
+        Session session = sessions.get(id);
+        if (session == null) return;
+        if (--session.refCount <= 0) sessions.remove(id);
+    }
+
+    private void evictStalePending() {
+        int pending = 0;
+        for (Session session : sessions.values()) {
+            if (session.refCount == 0) pending++;
+        }
+        Iterator<Session> iterator = sessions.values().iterator();
+        while (pending > MAX_PENDING && iterator.hasNext()) {
+            if (iterator.next().refCount == 0) {
+                iterator.remove();
+                pending--;
+            }
+        }
+    }
+
+    static void saveToBundle(Session session, Bundle outState) {
+        outState.putString(EXTRA_SESSION_ID, session.id);
+        outState.putString(KEY_MODEL, session.model.name());
+        outState.putInt(KEY_WIDTH, session.width);
+        outState.putInt(KEY_HEIGHT, session.height);
+        outState.putFloatArray(KEY_TENSOR, session.tensor);
+    }
+
+    /** Odtwarza sesję po śmierci procesu; zwraca już przejętą sesję albo null. */
+    synchronized Session restoreFromBundle(Bundle savedState) {
+        String modelName = savedState.getString(KEY_MODEL);
+        float[] tensor = savedState.getFloatArray(KEY_TENSOR);
+        if (modelName == null || tensor == null) return null;
+
+        int width = savedState.getInt(KEY_WIDTH);
+        int height = savedState.getInt(KEY_HEIGHT);
+        String id = put(ModelRegistry.Model.valueOf(modelName), width, height, tensor, null);
+        return acquire(id);
+    }
+
+    static Bitmap renderTensor(ModelRegistry.Model model, int width, int height, float[] tensor) {
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            // MNIST pokazujemy tak jak był rysowany: czarny tusz na białym tle
+            float value = model == ModelRegistry.Model.MNIST ? 1.0f - tensor[i] : tensor[i];
+            int gray = Math.max(0, Math.min(255, (int) (value * 255)));
+            pixels[i] = 0xFF000000 | (gray << 16) | (gray << 8) | gray;
+        }
+        return Bitmap.createBitmap(pixels, width, height, Bitmap.Config.ARGB_8888);
+    }
+}
@@ -1,56 +1,217 @@
 package edu.jkiryla.aiexplainer;
 
 import android.Manifest;
+import android.content.BroadcastReceiver;
+import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.pm.PackageManager;
-import android.content.res.AssetFileDescriptor;
 import android.graphics.Bitmap;
 import android.graphics.Color;
+import android.graphics.Matrix;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.PowerManager;
+import android.os.SystemClock;
 import android.util.Log;
+import android.util.Size;
+import android.view.View;
 import android.widget.Button;
 import android.widget.ImageButton;
 import android.widget.ImageView;
+import android.widget.SeekBar;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.OptIn;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.camera.core.CameraSelector;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.ImageProxy;
 import androidx.camera.core.Preview;
 import androidx.camera.lifecycle.ProcessCameraProvider;
 import androidx.camera.view.PreviewView;
+import androidx.camera.view.TransformExperimental;
+import androidx.camera.view.transform.CoordinateTransform;
+import androidx.camera.view.transform.ImageProxyTransformFactory;
+import androidx.camera.view.transform.OutputTransform;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
 import com.google.common.util.concurrent.ListenableFuture;
 
+import edu.jkiryla.aiexplainer.core.AdaptiveRateController;
+import edu.jkiryla.aiexplainer.core.FaceTracker;
+import edu.jkiryla.aiexplainer.core.FrameRateCounter;
+import edu.jkiryla.aiexplainer.core.FrameRing;
+import edu.jkiryla.aiexplainer.core.InferenceGate;
+import edu.jkiryla.aiexplainer.core.LumaPreprocessor;
+import edu.jkiryla.aiexplainer.core.ProbabilitySmoother;
+import edu.jkiryla.aiexplainer.core.RateController;
+import edu.jkiryla.aiexplainer.core.TensorCodec;
+import edu.jkiryla.aiexplainer.core.TensorOps;
+
 import org.tensorflow.lite.Interpreter;
 
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
+import java.nio.FloatBuffer;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+// Ramki grupowe używają transformacji współrzędnych CameraX (TransformExperimental)
+@OptIn(markerClass = TransformExperimental.class)
 public class FaceActivity extends AppCompatActivity {
 
     private static final int CAMERA_PERMISSION_CODE = 100;
     private static final int MODEL_INPUT_SIZE = 48;
+    private static final int NUM_CLASSES = 8;
 
     private PreviewView viewFinder;
     private TextView resultText;
     private ImageView modelInputPreview;
-    private Interpreter tflite;
-
-    private Bitmap lastCapturedBitmap = null;
-
-    private final String[] emotions = {
-            "Neutralny", "Radość", "Zaskoczenie", "Smutek",
-            "Złość", "Obrzydzenie", "Strach", "Pogarda"
+    private TextView liveStatsText;
+    private TextView stageStatsText;
+    private FaceLabelOverlay faceLabels;
+    private SeekBar historySeek;
+    private ImageView featureMapView;
+    // Mapy cech na żywo z płaszczyzny jasności każdej klatki analizy
+    private LiveFeatureRenderer featureRenderer;
+    private volatile boolean featureMode = false;
+    private ModelHandle modelHandle;
+    private volatile Interpreter tflite;
+    // Wywołania interpretera idą przez wątek modelu; nowa klatka zastępuje czekającą
+    private InferenceScheduler scheduler;
+    private ExplanationCache predictionCache;
+    private final Object inferenceSlot = new Object();
+    private static final long INFERENCE_DEADLINE_MS = 300;
+    // Zdjęcie ma własny slot i dłuższy termin: może czekać za pierwszym wywołaniem albo
+    // wymianą interpretera, a nie może przepaść bez odpowiedzi
+    private final Object captureSlot = new Object();
+    private static final long CAPTURE_DEADLINE_MS = 2000;
+
+    private ExecutorService analysisExecutor;
+    // Tempo trybu na żywo, rozdzielczość analizy i liczba wątków zależne od temperatury,
+    // oszczędzania baterii i czasu wywołań
+    private final RateController rateController = new AdaptiveRateController();
+    private volatile RateController.Settings appliedRate;
+    private volatile long minInferenceIntervalNanos;
+    private long nextSubmitNanos; // wątek analizy, czas kamery
+    // Interpreter z ograniczoną liczbą wątków, gdy kontroler tego wymaga (tylko wątek modelu)
+    private Interpreter throttledInterpreter;
+    private PowerManager powerManager;
+    private PowerManager.OnThermalStatusChangedListener thermalListener;
+    private final BroadcastReceiver powerSaveReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            rateController.onPowerSaveMode(powerManager.isPowerSaveMode());
+            applyRateSettings();
+        }
     };
+    private volatile boolean liveMode = false;
+    private final AtomicBoolean singleShotRequested = new AtomicBoolean(false);
+    private final FrameRateCounter frameRateCounter = new FrameRateCounter();
+    private static final int STAGE_ROI = 0;
+    private static final int STAGE_CROP = 1;
+    private static final int STAGE_ENCODE = 2;
+    private static final int STAGE_INFERENCE = 3;
+    private static final int STAGE_SOFTMAX = 4;
+    private static final int STAGE_UI = 5;
+    private final StageProfiler profiler =
+            new StageProfiler("face", "roi", "crop", "encode", "inference", "softmax", "ui");
+
+    // Bufory wątku analizy
+    private final LumaPreprocessor lumaPreprocessor = new LumaPreprocessor(MODEL_INPUT_SIZE);
+    // Lokalizacja twarzy: detektor co TRACK_KEYFRAME_INTERVAL klatek, między nimi śledzenie
+    // na obrazie zmniejszonym TRACK_STEP razy
+    private static final int TRACK_STEP = 2;
+    private static final int TRACK_KEYFRAME_INTERVAL = 15;
+    private static final int TRACK_SEARCH_RADIUS = 8;
+    private final FaceRoiDetector faceRoiDetector = new FaceRoiDetector();
+    private final FaceTracker faceTracker = new FaceTracker(TRACK_KEYFRAME_INTERVAL, TRACK_SEARCH_RADIUS);
+    private byte[] trackFrame = new byte[0];
+    private int trackWidth;
+    private int trackHeight;
+    // Tryb na żywo: pomijanie prawie identycznych klatek i wygładzanie wyniku
+    private static final float GATE_THRESHOLD = 0.02f;
+    private static final int GATE_MAX_SKIPS = 15;
+    private static final float SMOOTHING_ALPHA = 0.3f;
+    private final InferenceGate inferenceGate =
+            new InferenceGate(MODEL_INPUT_SIZE * MODEL_INPUT_SIZE, GATE_THRESHOLD, GATE_MAX_SKIPS);
+    private final ProbabilitySmoother probabilitySmoother = new ProbabilitySmoother(NUM_CLASSES, SMOOTHING_ALPHA);
+    private final AtomicBoolean resetLiveState = new AtomicBoolean(false);
+    private final float[] inputValues = new float[MODEL_INPUT_SIZE * MODEL_INPUT_SIZE];
+    private final FloatBuffer inputFloats = FloatBuffer.wrap(inputValues);
+    private final int[] framePixels = new int[MODEL_INPUT_SIZE * MODEL_INPUT_SIZE];
+
+    // Bufory wątku modelu (bramka i wygładzanie też żyją tylko tam).
+    // Kodeki zależą od typu tensorów wybranego wariantu modelu, powstają w onModelReady
+    private final float[] modelInputValues = new float[MODEL_INPUT_SIZE * MODEL_INPUT_SIZE];
+    private final int[] modelPixels = new int[MODEL_INPUT_SIZE * MODEL_INPUT_SIZE];
+    private TensorCodec inputCodec;
+    private TensorCodec outputCodec;
+    private final Object[] modelInputs = new Object[1];
+    private final Map<Integer, Object> modelOutputs = new HashMap<>();
+    private final float[] probabilities = new float[NUM_CLASSES];
+
+    // Ostatnia klatka i ostatnia sklasyfikowana klatka, chronione przez frameLock
+    private final Object frameLock = new Object();
+    private final int[] latestFramePixels = new int[MODEL_INPUT_SIZE * MODEL_INPUT_SIZE];
+    private final int[] lastCapturedPixels = new int[MODEL_INPUT_SIZE * MODEL_INPUT_SIZE];
+    private final float[] latestFrameInput = new float[MODEL_INPUT_SIZE * MODEL_INPUT_SIZE];
+    private final float[] displayProbabilities = new float[NUM_CLASSES];
+    private boolean hasLatestFrame = false;
+    private boolean latestFrameLive = false;
+    private boolean displayedFromLive = false;
+    private final InferenceScheduler.Job runInference = this::runInference;
+    private final Runnable showCapturedResult = this::showCapturedResult;
+
+    // Tryb grupowy: wszystkie twarze z klatki jednym wywołaniem; klasyfikator tylko na wątku modelu
+    private final AtomicBoolean groupShotRequested = new AtomicBoolean(false);
+    // Ramki są we współrzędnych wyprostowanej klatki, czyli po obrocie z ImageInfo
+    private final ImageProxyTransformFactory imageTransformFactory = new ImageProxyTransformFactory();
+    private final Object groupSlot = new Object();
+    private static final long GROUP_DEADLINE_MS = 1000;
+    private volatile FaceBatchClassifier groupClassifier;
+
+    // Ostatnie sklasyfikowane klatki (ok. 3 s na żywo): przewijanie suwakiem i wyjaśnianie bez kopii
+    private static final int HISTORY_FRAMES = 96;
+    private final FrameRing frameHistory =
+            new FrameRing(HISTORY_FRAMES, MODEL_INPUT_SIZE * MODEL_INPUT_SIZE, NUM_CLASSES);
+    // Bufory wątku głównego dla klatki wybranej suwakiem
+    private int historyBack = 0;
+    private final float[] historyInput = new float[MODEL_INPUT_SIZE * MODEL_INPUT_SIZE];
+    private final int[] historyPixels = new int[MODEL_INPUT_SIZE * MODEL_INPUT_SIZE];
+    private final float[] historyProbabilities = new float[NUM_CLASSES];
+
+    private Bitmap previewBitmap;
+
+    private final String[] emotions = ModelRegistry.Model.FERPLUS.labels;
+
+    /** Twarze jednej klatki do klasyfikacji grupowej; powstaje tylko na żądanie użytkownika. */
+    private static final class GroupFrame {
+        final int count;
+        final float[] inputs;
+        // Kolejno środek x, środek y i bok kwadratu we współrzędnych wyprostowanej klatki
+        final float[] rois;
+        // Położenie klatki analizy względem czujnika; z transformacją podglądu daje ekran
+        final OutputTransform imageTransform;
+        final float[] probabilities;
+        final String[] labels;
+
+        GroupFrame(int count, OutputTransform imageTransform) {
+            this.count = count;
+            this.imageTransform = imageTransform;
+            inputs = new float[count * MODEL_INPUT_SIZE * MODEL_INPUT_SIZE];
+            rois = new float[3 * count];
+            probabilities = new float[count * NUM_CLASSES];
+            labels = new String[count];
+        }
+    }
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -60,7 +221,35 @@ public class FaceActivity extends AppCompatActivity {
         viewFinder = findViewById(R.id.viewFinder);
         resultText = findViewById(R.id.text_emotion_result);
         modelInputPreview = findViewById(R.id.model_input_preview);
+        liveStatsText = findViewById(R.id.text_live_stats);
+        stageStatsText = findViewById(R.id.text_stage_stats);
+        faceLabels = findViewById(R.id.face_labels);
+        historySeek = findViewById(R.id.seek_history);
+        featureMapView = findViewById(R.id.feature_map_view);
+        featureRenderer = new LiveFeatureRenderer(featureMapView);
         Button btnClassify = findViewById(R.id.btn_classify_face);
+        Button btnLive = findViewById(R.id.btn_live_face);
+        Button btnGroup = findViewById(R.id.btn_group_face);
+
+        analysisExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "FaceAnalysis"));
+        imageTransformFactory.setUsingRotationDegrees(true);
+        scheduler = ModelRegistry.getInstance(this).getScheduler(ModelRegistry.Model.FERPLUS);
+        predictionCache = ExplanationCache.getInstance(this);
+        previewBitmap = Bitmap.createBitmap(MODEL_INPUT_SIZE, MODEL_INPUT_SIZE, Bitmap.Config.ARGB_8888);
+
+        powerManager = getSystemService(PowerManager.class);
+        rateController.onPowerSaveMode(powerManager.isPowerSaveMode());
+        registerReceiver(powerSaveReceiver, new IntentFilter(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED));
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            rateController.onThermalStatus(powerManager.getCurrentThermalStatus());
+            thermalListener = status -> {
+                rateController.onThermalStatus(status);
+                applyRateSettings();
+            };
+            powerManager.addThermalStatusListener(ContextCompat.getMainExecutor(this), thermalListener);
+        }
+        appliedRate = rateController.getSettings();
+        minInferenceIntervalNanos = appliedRate.getMinIntervalNanos();
 
         ImageButton btnBack = findViewById(R.id.btn_back_face);
         btnBack.setOnClickListener(v -> finish());
@@ -68,43 +257,47 @@ public class FaceActivity extends AppCompatActivity {
         ImageButton btnExplainFace = findViewById(R.id.btn_explain_face);
 
         btnExplainFace.setOnClickListener(v -> {
-            Bitmap bitmapToSend;
-
-            if (lastCapturedBitmap != null) {
-
-                bitmapToSend = lastCapturedBitmap;
+            float[] tensorToSend;
+            int frames = frameHistory.size();
+            if (frames > 0) {
+                // Tensor klatki z historii trafia do sesji bez kopii; podgląd powstaje z niego
+                tensorToSend = frameHistory.shareInput(liveMode ? 0 : Math.min(historyBack, frames - 1));
             } else {
-
-                Bitmap bitmap = viewFinder.getBitmap();
-                if (bitmap == null) {
-                    Toast.makeText(this, "Brak obrazu z kamery", Toast.LENGTH_SHORT).show();
-                    return;
+                synchronized (frameLock) {
+                    if (!hasLatestFrame) {
+                        Toast.makeText(this, "Brak obrazu z kamery", Toast.LENGTH_SHORT).show();
+                        return;
+                    }
+                    tensorToSend = latestFrameInput.clone();
                 }
-
-                int minDimension = Math.min(bitmap.getWidth(), bitmap.getHeight());
-                int cropSize = (int) (minDimension * 0.6);
-                int startX = (bitmap.getWidth() - cropSize) / 2;
-                int startY = (bitmap.getHeight() - cropSize) / 2;
-                Bitmap croppedBitmap = Bitmap.createBitmap(bitmap, startX, startY, cropSize, cropSize);
-                bitmapToSend = Bitmap.createScaledBitmap(croppedBitmap, MODEL_INPUT_SIZE, MODEL_INPUT_SIZE, true);
             }
 
-            java.io.ByteArrayOutputStream stream = new java.io.ByteArrayOutputStream();
-            bitmapToSend.compress(Bitmap.CompressFormat.PNG, 100, stream);
-            byte[] byteArray = stream.toByteArray();
+            String sessionId = ExplanationSessionStore.getInstance().put(ModelRegistry.Model.FERPLUS,
+                    MODEL_INPUT_SIZE, MODEL_INPUT_SIZE, tensorToSend, null);
 
             Intent intent = new Intent(FaceActivity.this, ExplainActivity.class);
-            intent.putExtra("image_data", byteArray);
+            intent.putExtra(ExplanationSessionStore.EXTRA_SESSION_ID, sessionId);
             intent.putExtra("title", "Explainer: TWARZ");
             startActivity(intent);
         });
 
-        try {
-            tflite = new Interpreter(loadModelFile());
-        } catch (IOException e) {
-            e.printStackTrace();
-            resultText.setText("Błąd ładowania modelu!");
-        }
+        modelHandle = ModelHandle.borrow(ModelRegistry.getInstance(this), ModelRegistry.Model.FERPLUS, this,
+                new ModelRegistry.Listener() {
+                    @Override
+                    public void onModelReady(@NonNull Interpreter interpreter) {
+                        inputCodec = ModelRegistry.inputCodec(interpreter, 0);
+                        outputCodec = ModelRegistry.outputCodec(interpreter, 0);
+                        modelInputs[0] = inputCodec.buffer();
+                        modelOutputs.put(0, outputCodec.buffer());
+                        // Zapis do pola volatile publikuje bufory wątkowi modelu
+                        tflite = interpreter;
+                    }
+
+                    @Override
+                    public void onModelFailed(@NonNull Exception error) {
+                        resultText.setText("Błąd ładowania modelu!");
+                    }
+                });
 
         if (checkCameraPermission()) {
             startCamera();
@@ -113,6 +306,80 @@ public class FaceActivity extends AppCompatActivity {
         }
 
         btnClassify.setOnClickListener(v -> classifyCurrentFrame());
+        historySeek.setMax(HISTORY_FRAMES - 1);
+        historySeek.setProgress(HISTORY_FRAMES - 1);
+        historySeek.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
+            @Override
+            public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+                if (fromUser) showHistoryFrame(seekBar.getMax() - progress);
+            }
+
+            @Override
+            public void onStartTrackingTouch(SeekBar seekBar) {
+            }
+
+            @Override
+            public void onStopTrackingTouch(SeekBar seekBar) {
+            }
+        });
+        btnGroup.setOnClickListener(v -> classifyGroup());
+
+        Button btnFeatureMaps = findViewById(R.id.btn_feature_maps);
+        btnFeatureMaps.setOnClickListener(v -> {
+            featureMode = !featureMode;
+            featureMapView.setVisibility(featureMode ? View.VISIBLE : View.GONE);
+            btnFeatureMaps.setText(featureMode ? "Kamera" : "Mapy cech");
+        });
+        // Dotknięcie mapy przełącza pokazywany filtr
+        featureMapView.setOnClickListener(v -> {
+            int filter = (featureRenderer.getFilter() + 1) % LiveFeatureRenderer.FILTER_NAMES.length;
+            featureRenderer.setFilter(filter);
+            Toast.makeText(this, LiveFeatureRenderer.FILTER_NAMES[filter], Toast.LENGTH_SHORT).show();
+        });
+        profiler.setDetails(() -> {
+            FaceBatchClassifier classifier = groupClassifier;
+            String details = scheduler.summary() + "\ntempo: " + appliedRate;
+            if (featureMode) {
+                details += "\nmapy cech: " + featureRenderer.getRenderedFrames() + " klatek, pominięte "
+                        + featureRenderer.getDroppedFrames();
+            }
+            return classifier != null ? details + "\n" + classifier.summary() : details;
+        });
+        profiler.attachOverlay(resultText, stageStatsText);
+
+        btnLive.setOnClickListener(v -> {
+            liveMode = !liveMode;
+            frameRateCounter.reset();
+            resetLiveState.set(true);
+            btnLive.setText(liveMode ? "Stop" : "Na żywo");
+            btnClassify.setEnabled(!liveMode);
+            btnGroup.setEnabled(!liveMode);
+            historySeek.setEnabled(!liveMode);
+            faceLabels.clear();
+            liveStatsText.setVisibility(liveMode ? View.VISIBLE : View.GONE);
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        scheduler.cancel(inferenceSlot);
+        scheduler.cancel(captureSlot);
+        scheduler.cancel(groupSlot);
+        // Własne interpretery zamykamy na wątku modelu, po zleceniach, które mogły już wystartować
+        scheduler.runAfterPending(() -> {
+            if (groupClassifier != null) groupClassifier.close();
+            groupClassifier = null;
+            applyThreadLimit(0);
+        });
+        unregisterReceiver(powerSaveReceiver);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && thermalListener != null) {
+            powerManager.removeThermalStatusListener(thermalListener);
+        }
+        featureRenderer.release();
+        // Bitmapa detektora jest używana na wątku analizy, więc zwalniamy ją tam, po ostatniej klatce
+        analysisExecutor.execute(faceRoiDetector::release);
+        analysisExecutor.shutdown();
     }
 
     private void startCamera() {
@@ -123,10 +390,15 @@ public class FaceActivity extends AppCompatActivity {
                 ProcessCameraProvider cameraProvider = cameraProviderFuture.get();
                 Preview preview = new Preview.Builder().build();
                 preview.setSurfaceProvider(viewFinder.getSurfaceProvider());
+                ImageAnalysis imageAnalysis = new ImageAnalysis.Builder()
+                        .setTargetResolution(new Size(appliedRate.analysisWidth, appliedRate.analysisHeight))
+                        .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
+                        .build();
+                imageAnalysis.setAnalyzer(analysisExecutor, this::analyzeFrame);
                 CameraSelector cameraSelector = CameraSelector.DEFAULT_FRONT_CAMERA;
                 try {
                     cameraProvider.unbindAll();
-                    cameraProvider.bindToLifecycle(this, cameraSelector, preview);
+                    cameraProvider.bindToLifecycle(this, cameraSelector, preview, imageAnalysis);
                 } catch (Exception exc) {
                     Log.e("FaceActivity", "Use case binding failed", exc);
                 }
@@ -136,41 +408,339 @@ public class FaceActivity extends AppCompatActivity {
         }, ContextCompat.getMainExecutor(this));
     }
 
+    private void analyzeFrame(@NonNull ImageProxy image) {
+        try {
+            preprocessFace(image);
+            // Zmniejszona klatka z preprocessFace; zajęty renderer pomija ją bez czekania
+            if (featureMode) featureRenderer.offer(trackFrame, trackWidth, trackHeight);
+            boolean live = liveMode;
+            synchronized (frameLock) {
+                System.arraycopy(framePixels, 0, latestFramePixels, 0, framePixels.length);
+                System.arraycopy(inputValues, 0, latestFrameInput, 0, inputValues.length);
+                hasLatestFrame = true;
+                latestFrameLive = live;
+            }
+            if (!live && groupShotRequested.getAndSet(false)) captureGroup(image);
+
+            if (!live && !singleShotRequested.getAndSet(false)) return;
+            if (live) {
+                long timestamp = image.getImageInfo().getTimestamp();
+                frameRateCounter.onFrame(timestamp);
+                // Powyżej docelowego tempa klatka zostaje tylko jako najnowsza, bez inferencji.
+                // Tolerancja 10% okresu: przy tempie równym tempu kamery drgania nie gubią klatek.
+                long interval = minInferenceIntervalNanos;
+                long early = nextSubmitNanos - timestamp;
+                if (early > interval / 10 && early < interval) {
+                    frameRateCounter.onFrameThrottled();
+                    return;
+                }
+                // Kolejny termin od poprzedniego, nie od klatki, żeby średnie tempo było docelowe;
+                // po przerwie albo zmianie tempa (termin dalej niż okres) liczymy od tej klatki
+                nextSubmitNanos = Math.abs(early) < interval ? nextSubmitNanos + interval : timestamp + interval;
+            }
+            // Wątek analizy nie czeka na model: jeśli poprzednia klatka wciąż czeka, ta ją zastępuje
+            if (live) {
+                scheduler.submit(inferenceSlot, INFERENCE_DEADLINE_MS, runInference, showCapturedResult);
+            } else {
+                scheduler.submit(captureSlot, CAPTURE_DEADLINE_MS, runInference, showCapturedResult);
+            }
+        } finally {
+            image.close();
+        }
+    }
+
+    /** Na wątku modelu: bierze najnowszą klatkę, liczy (albo pomija) i publikuje wynik. */
+    private boolean runInference() {
+        if (tflite == null) return false;
+        boolean live;
+        synchronized (frameLock) {
+            System.arraycopy(latestFramePixels, 0, modelPixels, 0, modelPixels.length);
+            System.arraycopy(latestFrameInput, 0, modelInputValues, 0, modelInputValues.length);
+            live = latestFrameLive;
+        }
+        if (live && resetLiveState.getAndSet(false)) {
+            inferenceGate.reset();
+            probabilitySmoother.reset();
+        }
+
+        if (live && !inferenceGate.shouldRun(modelInputValues)) {
+            // Klatka prawie taka sama jak ostatnio przeliczona: zostaje poprzedni wynik
+            inferenceGate.onSkipped();
+        } else {
+            long start = SystemClock.elapsedRealtimeNanos();
+            // Zdjęcia sprawdzamy w pamięci podręcznej; klatki na żywo pokrywa bramka
+            String cacheKey = live ? null : predictionCache.predictionKey(ModelRegistry.Model.FERPLUS, modelInputValues);
+            if (cacheKey == null || !predictionCache.getPrediction(cacheKey, probabilities)) {
+                if (!runModel()) return false;
+                if (cacheKey != null) predictionCache.putPrediction(cacheKey, probabilities);
+            }
+            if (live) {
+                inferenceGate.onInferred(modelInputValues, SystemClock.elapsedRealtimeNanos() - start);
+                probabilitySmoother.update(probabilities);
+            }
+        }
+
+        frameHistory.write(SystemClock.elapsedRealtimeNanos(), modelInputValues, probabilities);
+        synchronized (frameLock) {
+            System.arraycopy(modelPixels, 0, lastCapturedPixels, 0, modelPixels.length);
+            System.arraycopy(probabilities, 0, displayProbabilities, 0, NUM_CLASSES);
+            displayedFromLive = live;
+        }
+        return true;
+    }
+
+    /**
+     * Wycina twarz do wejścia modelu: obszar z detektora lub śledzenia, a gdy twarzy nie ma,
+     * środek kadru jak dotąd.
+     */
+    private void preprocessFace(@NonNull ImageProxy image) {
+        ImageProxy.PlaneProxy yPlane = image.getPlanes()[0];
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int rotation = image.getImageInfo().getRotationDegrees();
+        long start = profiler.begin(STAGE_ROI);
+        try {
+            trackWidth = LumaPreprocessor.uprightWidth(width, height, rotation) / TRACK_STEP;
+            trackHeight = LumaPreprocessor.uprightHeight(width, height, rotation) / TRACK_STEP;
+            if (trackFrame.length != trackWidth * trackHeight) {
+                trackFrame = new byte[trackWidth * trackHeight];
+                faceTracker.reset();
+            }
+            LumaPreprocessor.sampleUpright(yPlane.getBuffer(), yPlane.getRowStride(), yPlane.getPixelStride(),
+                    width, height, rotation, TRACK_STEP, trackFrame);
+
+            if (faceTracker.needsKeyframe()) {
+                if (faceRoiDetector.detect(trackFrame, trackWidth, trackHeight)) {
+                    faceTracker.onDetection(trackFrame, trackWidth, trackHeight, faceRoiDetector.getCenterX(),
+                            faceRoiDetector.getCenterY(), faceRoiDetector.getSize());
+                } else {
+                    faceTracker.onDetectionMissed();
+                }
+            } else {
+                faceTracker.track(trackFrame, trackWidth, trackHeight);
+            }
+        } finally {
+            profiler.end(STAGE_ROI, start);
+        }
+
+        start = profiler.begin(STAGE_CROP);
+        try {
+            inputFloats.rewind();
+            if (faceTracker.hasRoi()) {
+                int size = Math.round(faceTracker.getSize() * TRACK_STEP);
+                int left = Math.round(faceTracker.getCenterX() * TRACK_STEP) - size / 2;
+                int top = Math.round(faceTracker.getCenterY() * TRACK_STEP) - size / 2;
+                lumaPreprocessor.process(yPlane.getBuffer(), yPlane.getRowStride(), yPlane.getPixelStride(),
+                        width, height, rotation, left, top, size, inputFloats, framePixels);
+            } else {
+                lumaPreprocessor.processCenterCrop(yPlane.getBuffer(), yPlane.getRowStride(), yPlane.getPixelStride(),
+                        width, height, rotation, LumaPreprocessor.DEFAULT_CROP_FRACTION, inputFloats, framePixels);
+            }
+        } finally {
+            profiler.end(STAGE_CROP, start);
+        }
+    }
+
     private void classifyCurrentFrame() {
         if (tflite == null) {
             Toast.makeText(this, "Model niezaładowany", Toast.LENGTH_SHORT).show();
             return;
         }
+        faceLabels.clear();
+        singleShotRequested.set(true);
+    }
 
-        Bitmap bitmap = viewFinder.getBitmap();
-        if (bitmap == null) return;
+    private void classifyGroup() {
+        if (tflite == null) {
+            Toast.makeText(this, "Model niezaładowany", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        groupShotRequested.set(true);
+    }
 
-        int minDimension = Math.min(bitmap.getWidth(), bitmap.getHeight());
-        int cropSize = (int) (minDimension * 0.6);
-        int startX = (bitmap.getWidth() - cropSize) / 2;
-        int startY = (bitmap.getHeight() - cropSize) / 2;
+    /**
+     * Na wątku analizy, po {@link #preprocessFace}: szuka wszystkich twarzy na zmniejszonej
+     * klatce i wycina każdą do 48x48 w jednym wsadzie, który klasyfikuje wątek modelu.
+     */
+    private void captureGroup(@NonNull ImageProxy image) {
+        int found = faceRoiDetector.detectAll(trackFrame, trackWidth, trackHeight);
+        GroupFrame frame = new GroupFrame(found, imageTransformFactory.getOutputTransform(image));
+        ImageProxy.PlaneProxy yPlane = image.getPlanes()[0];
+        int rotation = image.getImageInfo().getRotationDegrees();
+        FloatBuffer out = FloatBuffer.wrap(frame.inputs);
+        for (int i = 0; i < found; i++) {
+            float centerX = faceRoiDetector.getCenterX(i) * TRACK_STEP;
+            float centerY = faceRoiDetector.getCenterY(i) * TRACK_STEP;
+            int size = Math.round(faceRoiDetector.getSize(i) * TRACK_STEP);
+            frame.rois[3 * i] = centerX;
+            frame.rois[3 * i + 1] = centerY;
+            frame.rois[3 * i + 2] = size;
+            lumaPreprocessor.process(yPlane.getBuffer(), yPlane.getRowStride(), yPlane.getPixelStride(),
+                    image.getWidth(), image.getHeight(), rotation,
+                    Math.round(centerX) - size / 2, Math.round(centerY) - size / 2, size, out, null);
+        }
+        scheduler.submit(groupSlot, GROUP_DEADLINE_MS, () -> runGroupInference(frame), () -> showGroupResult(frame));
+    }
 
-        Bitmap croppedBitmap = Bitmap.createBitmap(bitmap, startX, startY, cropSize, cropSize);
-        Bitmap scaledBitmap = Bitmap.createScaledBitmap(croppedBitmap, MODEL_INPUT_SIZE, MODEL_INPUT_SIZE, true);
+    /** Na wątku modelu: jedno wywołanie dla wszystkich twarzy klatki. */
+    private boolean runGroupInference(GroupFrame frame) {
+        if (frame.count == 0) return true;
+        FaceBatchClassifier classifier = groupClassifier;
+        if (classifier == null) {
+            try {
+                classifier = new FaceBatchClassifier(this, ModelRegistry.Model.FERPLUS, FaceRoiDetector.MAX_FACES);
+            } catch (IOException | RuntimeException e) {
+                Log.e("FaceActivity", "Batch classifier failed", e);
+                return false;
+            }
+            groupClassifier = classifier;
+        }
+        // Czas na twarz dla każdego N zbiera sam klasyfikator (nakładka statystyk)
+        classifier.classify(frame.inputs, frame.count, frame.probabilities);
+
+        float[] row = new float[NUM_CLASSES];
+        for (int i = 0; i < frame.count; i++) {
+            System.arraycopy(frame.probabilities, i * NUM_CLASSES, row, 0, NUM_CLASSES);
+            int best = TensorOps.argmax(row);
+            frame.labels[i] = best >= 0 && best < emotions.length
+                    ? String.format("%s (%.0f%%)", emotions[best], row[best] * 100) : "?";
+        }
+        return true;
+    }
 
-        lastCapturedBitmap = scaledBitmap;
+    private void showGroupResult(GroupFrame frame) {
+        if (liveMode) return;
+        if (frame.count == 0) {
+            faceLabels.clear();
+            Toast.makeText(this, "Nie wykryto twarzy", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        // Podgląd może mieć inne proporcje niż klatka analizy (np. 4:3 wobec 11:9) i jest lustrzany
+        // dla przedniej kamery, więc ramki przechodzą przez faktyczną transformację podglądu
+        OutputTransform previewTransform = viewFinder.getOutputTransform();
+        if (previewTransform == null) {
+            faceLabels.clear();
+            return;
+        }
+        Matrix toView = new Matrix();
+        new CoordinateTransform(frame.imageTransform, previewTransform).transform(toView);
+        faceLabels.setFaces(frame.count, frame.rois, frame.labels, toView);
+        resultText.setTextColor(Color.DKGRAY);
+        resultText.setText("Twarze: " + frame.count);
+    }
 
-        modelInputPreview.setImageBitmap(scaledBitmap);
-        ByteBuffer inputBuffer = convertBitmapToGrayscaleByteBuffer(scaledBitmap);
+    private void showCapturedResult() {
+        long start = profiler.begin(STAGE_UI);
+        try {
+            // Nowy wynik: suwak historii wraca do najnowszej klatki
+            historyBack = 0;
+            historySeek.setProgress(historySeek.getMax());
+            updateResultViews();
+        } finally {
+            profiler.end(STAGE_UI, start);
+        }
+    }
 
-        float[][] output = new float[1][8];
-        tflite.run(inputBuffer, output);
+    private void updateResultViews() {
+        synchronized (frameLock) {
+            if (displayedFromLive && !liveMode) return;
+            previewBitmap.setPixels(lastCapturedPixels, 0, MODEL_INPUT_SIZE, 0, 0, MODEL_INPUT_SIZE, MODEL_INPUT_SIZE);
+            showResult(displayProbabilities);
+        }
+        modelInputPreview.setImageBitmap(previewBitmap);
+        modelInputPreview.invalidate();
+        if (liveMode) {
+            liveStatsText.setText(String.format("FPS: %.1f | Pominięte klatki: %d | Ponad tempo: %d\nBez modelu: %.0f%% | Zaoszczędzono: %d ms",
+                    frameRateCounter.getFps(), frameRateCounter.getDroppedFrames(), frameRateCounter.getThrottledFrames(),
+                    inferenceGate.getSkipRatio() * 100, inferenceGate.getSavedMs()));
+        }
+    }
 
-        float[] probabilities = softmax(output[0]);
+    /** Na wątku głównym: stosuje zmienione ustawienia kontrolera tempa. */
+    private void applyRateSettings() {
+        RateController.Settings settings = rateController.getSettings();
+        RateController.Settings previous = appliedRate;
+        if (settings == previous || isDestroyed()) return;
+        appliedRate = settings;
+        minInferenceIntervalNanos = settings.getMinIntervalNanos();
+        Log.i("FaceActivity", "Inference rate: " + settings);
+        if ((settings.analysisWidth != previous.analysisWidth || settings.analysisHeight != previous.analysisHeight)
+                && checkCameraPermission()) {
+            startCamera(); // ponowne wiązanie z nową rozdzielczością analizy
+        }
+        if (settings.maxThreads != previous.maxThreads) {
+            scheduler.runAfterPending(() -> applyThreadLimit(settings.maxThreads));
+        }
+    }
 
-        int bestIndex = -1;
-        float maxProb = 0.0f;
-        for (int i = 0; i < probabilities.length; i++) {
-            if (probabilities[i] > maxProb) {
-                maxProb = probabilities[i];
-                bestIndex = i;
+    /** Na wątku modelu: {@code maxThreads} <= 0 wraca do wspólnego interpretera. */
+    private void applyThreadLimit(int maxThreads) {
+        Interpreter previous = throttledInterpreter;
+        throttledInterpreter = null;
+        if (maxThreads > 0 && !isDestroyed()) {
+            try {
+                throttledInterpreter = ModelRegistry.getInstance(this).newInterpreter(ModelRegistry.Model.FERPLUS, maxThreads);
+            } catch (IOException | RuntimeException e) {
+                Log.e("FaceActivity", "Throttled interpreter failed", e);
             }
         }
+        if (previous != null) previous.close();
+    }
+
+    /** Pokazuje klatkę sprzed {@code back} klasyfikacji: jej wejście, wynik i wiek. */
+    private void showHistoryFrame(int back) {
+        int frames = frameHistory.size();
+        if (frames == 0) return;
+        historyBack = Math.min(back, frames - 1);
+        frameHistory.copyInput(historyBack, historyInput);
+        frameHistory.copyOutput(historyBack, historyProbabilities);
+        for (int i = 0; i < historyPixels.length; i++) {
+            int gray = Math.max(0, Math.min(255, (int) (historyInput[i] * 255)));
+            historyPixels[i] = 0xFF000000 | (gray << 16) | (gray << 8) | gray;
+        }
+        previewBitmap.setPixels(historyPixels, 0, MODEL_INPUT_SIZE, 0, 0, MODEL_INPUT_SIZE, MODEL_INPUT_SIZE);
+        modelInputPreview.setImageBitmap(previewBitmap);
+        modelInputPreview.invalidate();
+        showResult(historyProbabilities);
+        if (historyBack > 0) {
+            double seconds = (frameHistory.getTimestamp(0) - frameHistory.getTimestamp(historyBack)) / 1e9;
+            resultText.append(String.format(" · -%.1f s", seconds));
+        }
+    }
+
+    private boolean runModel() {
+        Interpreter interpreter = throttledInterpreter != null ? throttledInterpreter : tflite;
+        if (interpreter == null) return false;
+        // Sekcje Trace zamykamy też po wyjątku: wątek modelu działa dalej
+        long start = profiler.begin(STAGE_ENCODE);
+        try {
+            inputCodec.encode(modelInputValues);
+        } finally {
+            profiler.end(STAGE_ENCODE, start);
+        }
+        long inferenceNanos;
+        start = profiler.begin(STAGE_INFERENCE);
+        try {
+            interpreter.runForMultipleInputsOutputs(modelInputs, modelOutputs);
+            inferenceNanos = SystemClock.elapsedRealtimeNanos() - start;
+        } finally {
+            profiler.end(STAGE_INFERENCE, start);
+        }
+        rateController.onInferenceLatency(inferenceNanos);
+        if (rateController.getSettings() != appliedRate) runOnUiThread(this::applyRateSettings);
+        start = profiler.begin(STAGE_SOFTMAX);
+        try {
+            outputCodec.decode(probabilities);
+            TensorOps.softmaxInPlace(probabilities);
+        } finally {
+            profiler.end(STAGE_SOFTMAX, start);
+        }
+        return true;
+    }
+
+    private void showResult(float[] probabilities) {
+        int bestIndex = TensorOps.argmax(probabilities);
+        float maxProb = bestIndex >= 0 ? probabilities[bestIndex] : 0.0f;
 
         if (bestIndex != -1 && bestIndex < emotions.length) {
             resultText.setText(String.format("%s (%.1f%%)", emotions[bestIndex], maxProb * 100));
@@ -182,41 +752,6 @@ public class FaceActivity extends AppCompatActivity {
         }
     }
 
-    private float[] softmax(float[] logits) {
-        float[] probs = new float[logits.length];
-        float maxLogit = -Float.MAX_VALUE;
-        for (float val : logits) { if (val > maxLogit) maxLogit = val; }
-        float sum = 0.0f;
-        for (int i = 0; i < logits.length; i++) {
-            probs[i] = (float) Math.exp(logits[i] - maxLogit);
-            sum += probs[i];
-        }
-        for (int i = 0; i < logits.length; i++) { probs[i] /= sum; }
-        return probs;
-    }
-
-    private ByteBuffer convertBitmapToGrayscaleByteBuffer(Bitmap bitmap) {
-        ByteBuffer byteBuffer = ByteBuffer.allocateDirect(4 * MODEL_INPUT_SIZE * MODEL_INPUT_SIZE * 1);
-        byteBuffer.order(ByteOrder.nativeOrder());
-        int[] pixels = new int[MODEL_INPUT_SIZE * MODEL_INPUT_SIZE];
-        bitmap.getPixels(pixels, 0, MODEL_INPUT_SIZE, 0, 0, MODEL_INPUT_SIZE, MODEL_INPUT_SIZE);
-        for (int pixelValue : pixels) {
-            int r = (pixelValue >> 16) & 0xFF;
-            float gray = (r * 0.299f + (pixelValue >> 8 & 0xFF) * 0.587f + (pixelValue & 0xFF) * 0.114f);
-            byteBuffer.putFloat(gray / 255.0f);
-        }
-        return byteBuffer;
-    }
-
-    private MappedByteBuffer loadModelFile() throws IOException {
-        AssetFileDescriptor fileDescriptor = this.getAssets().openFd("ferplus_model_pd_best.tflite");
-        FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor());
-        FileChannel fileChannel = inputStream.getChannel();
-        long startOffset = fileDescriptor.getStartOffset();
-        long declaredLength = fileDescriptor.getDeclaredLength();
-        return fileChannel.map(FileChannel.MapMode.READ_ONLY, startOffset, declaredLength);
-    }
-
     private boolean checkCameraPermission() {
         return ContextCompat.checkSelfPermission(this, Manifest.permission.CAMERA) == PackageManager.PERMISSION_GRANTED;
     }
@@ -0,0 +1,97 @@
+package edu.jkiryla.aiexplainer;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import edu.jkiryla.aiexplainer.core.LatencyHistogram;
+import edu.jkiryla.aiexplainer.core.TensorCodec;
+import edu.jkiryla.aiexplainer.core.TensorOps;
+
+import org.tensorflow.lite.Interpreter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Klasyfikuje kilka twarzy jednym wywołaniem: wejścia idą wsadem [N, H, W, 1]
+ * ({@link Interpreter#resizeInput}), a kształt zmienia się tylko przy zmianie liczby twarzy.
+ * Używa własnego interpretera aktywnego wariantu, więc nie zmienia kształtu tego, który
+ * pożyczają aktywności. Czas na twarz jest zbierany osobno dla każdego N; wiersz N=1
+ * odpowiada osobnym wywołaniom dla każdej twarzy.
+ */
+final class FaceBatchClassifier implements Closeable {
+
+    private final ModelRegistry.Model model;
+    private final Interpreter interpreter;
+    private final int inputSize;
+    private final int numClasses;
+    private final float[] row;
+    private final LatencyHistogram[] perFaceTimes;
+    private int batchSize = -1;
+    private TensorCodec inputCodec;
+    private TensorCodec outputCodec;
+
+    FaceBatchClassifier(Context context, ModelRegistry.Model model, int maxFaces) throws IOException {
+        this.model = model;
+        ModelRegistry registry = ModelRegistry.getInstance(context);
+        ModelRegistry.Variant variant = registry.getActiveVariant(model);
+        if (variant == null) variant = ModelRegistry.Variant.FLOAT32;
+        interpreter = new Interpreter(ModelRegistry.loadModelFile(context, model.assetName(variant)),
+                registry.newOptions(model));
+        inputSize = interpreter.getInputTensor(0).shape()[1];
+        numClasses = interpreter.getOutputTensor(0).numElements();
+        row = new float[numClasses];
+        perFaceTimes = new LatencyHistogram[maxFaces + 1];
+        for (int n = 1; n <= maxFaces; n++) perFaceTimes[n] = new LatencyHistogram();
+    }
+
+    int getInputSize() {
+        return inputSize;
+    }
+
+    int getNumClasses() {
+        return numClasses;
+    }
+
+    /**
+     * Klasyfikuje {@code count} wejść zapisanych kolejno w {@code inputs}; prawdopodobieństwa
+     * trafiają do kolejnych wierszy {@code probabilities}. Tablice mogą być dłuższe niż wsad.
+     */
+    void classify(float[] inputs, int count, float[] probabilities) {
+        if (count != batchSize) {
+            batchSize = count;
+            interpreter.resizeInput(0, new int[]{count, inputSize, inputSize, 1});
+            interpreter.allocateTensors();
+            inputCodec = ModelRegistry.inputCodec(interpreter, 0);
+            outputCodec = ModelRegistry.outputCodec(interpreter, 0);
+        }
+        long start = SystemClock.elapsedRealtimeNanos();
+        inputCodec.encode(inputs);
+        interpreter.run(inputCodec.buffer(), outputCodec.buffer());
+        outputCodec.decode(probabilities);
+        perFaceTimes[count].record((SystemClock.elapsedRealtimeNanos() - start) / count);
+
+        if (!model.outputsLogits) return;
+        for (int face = 0; face < count; face++) {
+            System.arraycopy(probabilities, face * numClasses, row, 0, numClasses);
+            TensorOps.softmaxInPlace(row);
+            System.arraycopy(row, 0, probabilities, face * numClasses, numClasses);
+        }
+    }
+
+    /** Mediana czasu na twarz (kodowanie, wywołanie i dekodowanie) dla każdego użytego N. */
+    String summary() {
+        StringBuilder text = new StringBuilder("ms/twarz:");
+        for (int n = 1; n < perFaceTimes.length; n++) {
+            if (perFaceTimes[n].getCount() == 0) continue;
+            text.append(String.format(Locale.US, "  N=%d %.2f", n, perFaceTimes[n].getPercentileMs(0.5)));
+        }
+        return text.toString();
+    }
+
+    @Override
+    public void close() {
+        interpreter.close();
+    }
+}
@@ -0,0 +1,81 @@
+package edu.jkiryla.aiexplainer;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.util.AttributeSet;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Ramki i etykiety twarzy nad podglądem kamery. Kwadraty są we współrzędnych wyprostowanej
+ * klatki analizy; macierz od aktywności przenosi je na widok tak jak PreviewView przenosi
+ * swój obraz (kadrowanie, proporcje i lustro przedniej kamery).
+ */
+public class FaceLabelOverlay extends View {
+
+    private final Paint boxPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint labelBackgroundPaint = new Paint();
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final RectF box = new RectF();
+    private final Matrix toView = new Matrix();
+    private final float[] rois = new float[3 * FaceRoiDetector.MAX_FACES];
+    private final String[] labels = new String[FaceRoiDetector.MAX_FACES];
+    private int count;
+
+    public FaceLabelOverlay(Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+        float density = getResources().getDisplayMetrics().density;
+        boxPaint.setStyle(Paint.Style.STROKE);
+        boxPaint.setStrokeWidth(2 * density);
+        boxPaint.setColor(Color.parseColor("#2ECC71"));
+        labelBackgroundPaint.setColor(0xB0000000);
+        textPaint.setColor(Color.WHITE);
+        textPaint.setTextSize(14 * density);
+    }
+
+    /**
+     * Pokazuje {@code count} twarzy: {@code rois} to kolejno środek x, środek y i bok kwadratu
+     * w klatce analizy, a {@code toView} przelicza tę klatkę na współrzędne widoku.
+     */
+    void setFaces(int count, float[] rois, String[] labels, Matrix toView) {
+        this.count = Math.min(count, FaceRoiDetector.MAX_FACES);
+        System.arraycopy(rois, 0, this.rois, 0, 3 * this.count);
+        System.arraycopy(labels, 0, this.labels, 0, this.count);
+        this.toView.set(toView);
+        invalidate();
+    }
+
+    void clear() {
+        if (count == 0) return;
+        count = 0;
+        invalidate();
+    }
+
+    @Override
+    protected void onDraw(@NonNull Canvas canvas) {
+        super.onDraw(canvas);
+        if (count == 0) return;
+        float padding = textPaint.getTextSize() / 4;
+
+        for (int i = 0; i < count; i++) {
+            float centerX = rois[3 * i];
+            float centerY = rois[3 * i + 1];
+            float half = rois[3 * i + 2] / 2;
+            box.set(centerX - half, centerY - half, centerX + half, centerY + half);
+            toView.mapRect(box);
+            canvas.drawRect(box, boxPaint);
+
+            float textWidth = textPaint.measureText(labels[i]);
+            float baseline = box.top - padding;
+            canvas.drawRect(box.left, baseline + textPaint.ascent() - padding,
+                    box.left + textWidth + 2 * padding, box.top, labelBackgroundPaint);
+            canvas.drawText(labels[i], box.left + padding, baseline, textPaint);
+        }
+    }
+}
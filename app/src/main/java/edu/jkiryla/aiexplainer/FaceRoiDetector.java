@@ -0,0 +1,125 @@
+package edu.jkiryla.aiexplainer;
+
+import android.graphics.Bitmap;
+import android.graphics.PointF;
+import android.media.FaceDetector;
+
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * Wykrywa twarze platformowym {@link FaceDetector} na małym obrazie w skali szarości.
+ * Bitmapa RGB_565 i bufory są tworzone raz dla danego rozmiaru obrazu.
+ */
+final class FaceRoiDetector {
+
+    static final int MAX_FACES = 8;
+
+    // Minimalna pewność detektora (FaceDetector.Face.CONFIDENCE_THRESHOLD to 0.4)
+    private static final float MIN_CONFIDENCE = 0.3f;
+    // Bok kwadratu twarzy względem odległości oczu i przesunięcie środka w dół od linii oczu
+    private static final float SIZE_PER_EYES_DISTANCE = 2.4f;
+    private static final float CENTER_DROP_PER_EYES_DISTANCE = 0.35f;
+
+    private int width;
+    private int height;
+    private Bitmap bitmap;
+    private short[] rgb565;
+    private ShortBuffer rgb565Buffer;
+    private FaceDetector detector;
+    private final FaceDetector.Face[] faces = new FaceDetector.Face[MAX_FACES];
+    private final PointF midPoint = new PointF();
+
+    private final float[] centerX = new float[MAX_FACES];
+    private final float[] centerY = new float[MAX_FACES];
+    private final float[] size = new float[MAX_FACES];
+    private int best;
+
+    /**
+     * Szuka jednej twarzy (najpewniejszej); przy sukcesie środek i bok kwadratu są dostępne
+     * przez gettery bez indeksu (współrzędne obrazu {@code gray}).
+     */
+    boolean detect(byte[] gray, int width, int height) {
+        return detectAll(gray, width, height) > 0;
+    }
+
+    /** Szuka do {@link #MAX_FACES} twarzy; kwadraty są dostępne przez gettery z indeksem. */
+    int detectAll(byte[] gray, int width, int height) {
+        // FaceDetector wymaga parzystej szerokości; ostatnia kolumna jest wtedy pomijana
+        int evenWidth = width & ~1;
+        ensureSize(evenWidth, height);
+
+        for (int y = 0; y < height; y++) {
+            int src = y * width;
+            int dst = y * evenWidth;
+            for (int x = 0; x < evenWidth; x++) {
+                int g = gray[src + x] & 0xFF;
+                rgb565[dst + x] = (short) (((g >> 3) << 11) | ((g >> 2) << 5) | (g >> 3));
+            }
+        }
+        rgb565Buffer.rewind();
+        bitmap.copyPixelsFromBuffer(rgb565Buffer);
+
+        Arrays.fill(faces, null);
+        int found = detector.findFaces(bitmap, faces);
+        int count = 0;
+        best = 0;
+        float bestConfidence = 0f;
+        for (int i = 0; i < found; i++) {
+            FaceDetector.Face face = faces[i];
+            if (face == null || face.confidence() < MIN_CONFIDENCE) continue;
+            face.getMidPoint(midPoint);
+            float eyes = face.eyesDistance();
+            centerX[count] = midPoint.x;
+            centerY[count] = midPoint.y + eyes * CENTER_DROP_PER_EYES_DISTANCE;
+            size[count] = eyes * SIZE_PER_EYES_DISTANCE;
+            if (face.confidence() > bestConfidence) {
+                bestConfidence = face.confidence();
+                best = count;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    float getCenterX() {
+        return centerX[best];
+    }
+
+    float getCenterY() {
+        return centerY[best];
+    }
+
+    float getSize() {
+        return size[best];
+    }
+
+    float getCenterX(int face) {
+        return centerX[face];
+    }
+
+    float getCenterY(int face) {
+        return centerY[face];
+    }
+
+    float getSize(int face) {
+        return size[face];
+    }
+
+    void release() {
+        if (bitmap != null) bitmap.recycle();
+        bitmap = null;
+        detector = null;
+    }
+
+    private void ensureSize(int width, int height) {
+        if (bitmap != null && this.width == width && this.height == height) return;
+        release();
+        this.width = width;
+        this.height = height;
+        bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+        rgb565 = new short[width * height];
+        rgb565Buffer = ShortBuffer.wrap(rgb565);
+        detector = new FaceDetector(width, height, faces.length);
+    }
+}
@@ -0,0 +1,161 @@
+package edu.jkiryla.aiexplainer;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import edu.jkiryla.aiexplainer.core.LatencyHistogram;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Własny wątek dla jednego interpretera (interpretery TFLite nie są bezpieczne wątkowo).
+ * Zlecenia są grupowane w slotach: nowe zlecenie zastępuje czekające w tym samym slocie,
+ * więc wykonuje się tylko najnowsze. Zlecenie po terminie jest pomijane, a anulowane
+ * nie dostarcza wyniku. Wynik (callback) trafia na wątek główny.
+ */
+final class InferenceScheduler {
+
+    private static final String TAG = "InferenceScheduler";
+
+    /** Praca na wątku interpretera; false, gdy nie ma wyniku do dostarczenia. */
+    interface Job {
+        boolean run();
+    }
+
+    /** Zlecenie w kolejce; {@link #cancel()} można wołać z dowolnego wątku. */
+    final class Request implements Runnable {
+        private final Object slot;
+        private final Job job;
+        private final Runnable callback;
+        private final long submittedNanos;
+        private final long deadlineNanos;
+        private boolean started;
+        private volatile boolean cancelled;
+
+        private Request(Object slot, Job job, Runnable callback, long timeoutMs) {
+            this.slot = slot;
+            this.job = job;
+            this.callback = callback;
+            submittedNanos = SystemClock.elapsedRealtimeNanos();
+            deadlineNanos = timeoutMs > 0 ? submittedNanos + timeoutMs * 1_000_000L : Long.MAX_VALUE;
+        }
+
+        @Override
+        public void run() {
+            synchronized (InferenceScheduler.this) {
+                if (cancelled) return;
+                started = true;
+                queueDepth--;
+            }
+            long now = SystemClock.elapsedRealtimeNanos();
+            waitTimes.record(now - submittedNanos);
+            if (now > deadlineNanos) {
+                expired++;
+                return;
+            }
+            boolean hasResult;
+            try {
+                hasResult = job.run();
+            } catch (RuntimeException e) {
+                Log.e(TAG, thread.getName() + " job failed", e);
+                return;
+            }
+            if (hasResult && callback != null) mainHandler.post(this::deliver);
+        }
+
+        private void deliver() {
+            if (!cancelled) callback.run();
+        }
+
+        void cancel() {
+            synchronized (InferenceScheduler.this) {
+                if (cancelled) return;
+                cancelled = true;
+                if (!started) queueDepth--;
+                if (latest.get(slot) == this) latest.remove(slot);
+            }
+            handler.removeCallbacks(this);
+        }
+    }
+
+    private final HandlerThread thread;
+    private final Handler handler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Ostatnie zlecenie każdego slotu (czekające albo już wykonane, ale być może niedostarczone)
+    private final Map<Object, Request> latest = new HashMap<>();
+    private final LatencyHistogram waitTimes = new LatencyHistogram();
+    private int queueDepth;
+    private int maxQueueDepth;
+    private long coalesced;
+    private volatile long expired;
+
+    InferenceScheduler(String name) {
+        thread = new HandlerThread("Inference-" + name);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Zleca {@code job} na wątek interpretera, zastępując czekające zlecenie slotu.
+     * {@code callback} (może być null) wykona się na wątku głównym, jeśli zlecenie
+     * nie zostanie w międzyczasie anulowane; {@code timeoutMs} <= 0 oznacza brak terminu.
+     */
+    Request submit(Object slot, long timeoutMs, Job job, Runnable callback) {
+        Request request = new Request(slot, job, callback, timeoutMs);
+        Request previous;
+        synchronized (this) {
+            previous = latest.put(slot, request);
+            if (previous != null && !previous.started && !previous.cancelled) coalesced++;
+            queueDepth++;
+            if (queueDepth > maxQueueDepth) maxQueueDepth = queueDepth;
+        }
+        if (previous != null) previous.cancel();
+        handler.post(request);
+        return request;
+    }
+
+    /** Anuluje czekające zlecenie slotu i blokuje dostarczenie wyniku już wykonanego. */
+    void cancel(Object slot) {
+        Request request;
+        synchronized (this) {
+            request = latest.get(slot);
+        }
+        if (request != null) request.cancel();
+    }
+
+    /** Wykonuje {@code task} na wątku interpretera po wszystkich wcześniejszych zleceniach. */
+    void runAfterPending(Runnable task) {
+        handler.post(task);
+    }
+
+    synchronized int getQueueDepth() {
+        return queueDepth;
+    }
+
+    synchronized int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    synchronized long getCoalesced() {
+        return coalesced;
+    }
+
+    long getExpired() {
+        return expired;
+    }
+
+    LatencyHistogram getWaitTimes() {
+        return waitTimes;
+    }
+
+    String summary() {
+        return String.format(Locale.US, "queue %d (max %d)  wait p50 %.2f p95 %.2f ms  coalesced %d  expired %d",
+                getQueueDepth(), getMaxQueueDepth(), waitTimes.getPercentileMs(0.5),
+                waitTimes.getPercentileMs(0.95), getCoalesced(), getExpired());
+    }
+}
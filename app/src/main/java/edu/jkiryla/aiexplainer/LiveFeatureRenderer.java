@@ -0,0 +1,120 @@
+package edu.jkiryla.aiexplainer;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.ImageView;
+
+import edu.jkiryla.aiexplainer.core.ConvolutionEngine;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Mapy cech na żywo: odpowiedzi filtrów Sobela (jak w {@link ExplainActivity}) liczone
+ * na płaszczyźnie jasności każdej klatki analizy, na osobnym wątku. Wynik trafia na
+ * przemian do dwóch bitmap, więc klatka nie alokuje, a widok nie pokazuje bitmapy w trakcie
+ * zapisu. Gdy poprzednia klatka nie została jeszcze pokazana, nowa jest pomijana.
+ */
+final class LiveFeatureRenderer {
+
+    static final String[] FILTER_NAMES = {"Krawędzie pionowe", "Krawędzie poziome", "Krawędzie (razem)"};
+
+    private static final ConvolutionEngine.Kernel[] KERNELS = {ConvolutionEngine.SOBEL_X, ConvolutionEngine.SOBEL_Y};
+
+    private final ImageView target;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "LiveFeatures"));
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Od przyjęcia klatki do jej pokazania na wątku głównym
+    private final AtomicBoolean busy = new AtomicBoolean(false);
+    private volatile int filter = 2;
+    private volatile boolean released;
+    private volatile long renderedFrames;
+    private volatile long droppedFrames;
+
+    // Bufory wątku renderującego (klatka jest kopiowana do gray przed przekazaniem)
+    private int width;
+    private int height;
+    private byte[] gray = new byte[0];
+    private float[] luma;
+    private float[][] responses;
+    private int[] pixels;
+    private final Bitmap[] bitmaps = new Bitmap[2];
+    private int backIndex;
+
+    LiveFeatureRenderer(ImageView target) {
+        this.target = target;
+    }
+
+    /**
+     * Z wątku analizy: przyjmuje obraz w skali szarości {@code width} x {@code height}.
+     * Zwraca false, gdy klatka została pominięta, bo poprzednia jeszcze się renderuje.
+     */
+    boolean offer(byte[] frame, int width, int height) {
+        if (released || !busy.compareAndSet(false, true)) {
+            droppedFrames++;
+            return false;
+        }
+        // Bufor jest wolny: poprzednia klatka skończyła się renderować przed zwolnieniem busy
+        if (gray.length != width * height) gray = new byte[width * height];
+        System.arraycopy(frame, 0, gray, 0, width * height);
+        int frameWidth = width;
+        int frameHeight = height;
+        executor.execute(() -> render(frameWidth, frameHeight));
+        return true;
+    }
+
+    void setFilter(int filter) {
+        this.filter = filter;
+    }
+
+    int getFilter() {
+        return filter;
+    }
+
+    long getRenderedFrames() {
+        return renderedFrames;
+    }
+
+    long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    void release() {
+        released = true;
+        executor.shutdownNow();
+    }
+
+    private void render(int frameWidth, int frameHeight) {
+        if (released) return;
+        ensureSize(frameWidth, frameHeight);
+        for (int i = 0; i < luma.length; i++) luma[i] = gray[i] & 0xFF;
+        ConvolutionEngine.shared().convolveFused(luma, width, height, KERNELS,
+                new float[][]{responses[0], responses[1]}, responses[2]);
+        ConvolutionEngine.toArgb(responses[filter], pixels);
+
+        Bitmap bitmap = bitmaps[backIndex];
+        bitmap.setPixels(pixels, 0, width, 0, 0, width, height);
+        backIndex ^= 1;
+        mainHandler.post(() -> {
+            if (!released) target.setImageBitmap(bitmap);
+            renderedFrames++;
+            // Dopiero teraz druga bitmapa przestała być wyświetlana, więc można w nią pisać
+            busy.set(false);
+        });
+    }
+
+    private void ensureSize(int width, int height) {
+        if (this.width == width && this.height == height) return;
+        this.width = width;
+        this.height = height;
+        luma = new float[width * height];
+        responses = new float[][]{new float[width * height], new float[width * height], new float[width * height]};
+        pixels = new int[width * height];
+        // Poprzednich bitmap nie zwalniamy: jedna z nich może jeszcze być w widoku
+        bitmaps[0] = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        bitmaps[1] = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        backIndex = 0;
+    }
+}
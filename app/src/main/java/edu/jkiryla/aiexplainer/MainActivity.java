@@ -13,6 +13,8 @@ public class MainActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
+        ModelRegistry.getInstance(this).preloadAll();
+
         Button btnMnist = findViewById(R.id.btn_mnist);
         btnMnist.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -1,32 +1,97 @@
 package edu.jkiryla.aiexplainer;
 
 import android.content.Intent;
-import android.content.res.AssetFileDescriptor;
 import android.graphics.Bitmap;
 import android.graphics.Color;
+import android.graphics.drawable.BitmapDrawable;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.View;
 import android.widget.Button;
 import android.widget.ImageButton; // <--- WAŻNE
 import android.widget.ImageView;
 import android.widget.TextView;
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 
+import edu.jkiryla.aiexplainer.core.TensorCodec;
+import edu.jkiryla.aiexplainer.core.TensorOps;
+
 import org.tensorflow.lite.Interpreter;
 
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.channels.FileChannel;
-import java.nio.MappedByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class MnistActivity extends AppCompatActivity {
 
     private DrawView drawView;
     private TextView resultText;
     private ImageView previewImage;
-    private Interpreter tflite;
+    private TextView stageStatsText;
+    private ModelHandle modelHandle;
+    private volatile Interpreter tflite;
+    // Wszystkie wywołania interpretera idą przez wątek modelu; sloty grupują zlecenia
+    private InferenceScheduler scheduler;
+    private final Object classifySlot = new Object();
+    private final Object liveSlot = new Object();
+
+    private static final int INPUT_SIZE = 28;
+    private static final int NUM_CLASSES = 10;
+    private static final long LIVE_INTERVAL_MS = 40;
+    // Wynik starszy niż to nie jest już wart pokazania: w tym czasie przyjdzie nowsze zlecenie
+    private static final long LIVE_DEADLINE_MS = 250;
+    private static final long CLASSIFY_DEADLINE_MS = 2000;
+
+    // Etapy mierzone przez profiler; "sample" to kopia siatki pokrycia z DrawView,
+    // "event-to-draw" to czas od zdarzenia dotyku do onDraw w DrawView, bez renderowania i wyświetlenia
+    private static final int STAGE_SAMPLE = 0;
+    private static final int STAGE_ENCODE = 1;
+    private static final int STAGE_INFERENCE = 2;
+    private static final int STAGE_DECODE = 3;
+    private static final int STAGE_UI = 4;
+    private static final int STAGE_EVENT_TO_DRAW = 5;
+    private final StageProfiler profiler =
+            new StageProfiler("mnist", "sample", "encode", "inference", "decode", "ui", "event-to-draw");
+
+    // Bufory klasyfikacji alokowane raz, wielokrotnie używane (wątek modelu, wynik czyta wątek UI).
+    // Kodeki powstają po załadowaniu modelu, bo typ tensorów zależy od wybranego wariantu.
+    private final float[] inputValues = new float[INPUT_SIZE * INPUT_SIZE];
+    private final FloatBuffer inputFloats = FloatBuffer.wrap(inputValues);
+    private TensorCodec inputCodec;
+    private TensorCodec outputCodec;
+    private final Object[] modelInputs = new Object[1];
+    private final Map<Integer, Object> modelOutputs = new HashMap<>();
+    private final float[] probabilities = new float[NUM_CLASSES];
+    private final float[] cells = new float[INPUT_SIZE * INPUT_SIZE];
+    private final int[] previewPixels = new int[INPUT_SIZE * INPUT_SIZE];
+    private Bitmap previewBitmap;
+    private BitmapDrawable previewDrawable;
+    private int classifiedDigit;
+    private float classifiedConfidence;
+    private final InferenceScheduler.Job runClassification = this::runClassification;
+    private final Runnable showClassification = this::showClassification;
+
+    // Rozpoznawanie w trakcie rysowania: bufory wątku modelu
+    private boolean liveMode = false;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicBoolean livePending = new AtomicBoolean(false);
+    private final float[] liveCells = new float[INPUT_SIZE * INPUT_SIZE];
+    private final float[] liveInputValues = new float[INPUT_SIZE * INPUT_SIZE];
+    private final FloatBuffer liveInputFloats = FloatBuffer.wrap(liveInputValues);
+    private TensorCodec liveInputCodec;
+    private TensorCodec liveOutputCodec;
+    private final Object[] liveInputs = new Object[1];
+    private final Map<Integer, Object> liveOutputs = new HashMap<>();
+    private final float[] liveProbabilities = new float[NUM_CLASSES];
+    private final int[] livePreviewPixels = new int[INPUT_SIZE * INPUT_SIZE];
+    private int liveDigit;
+    private float liveConfidence;
+    private final Runnable submitLiveInference = this::submitLiveInference;
+    private final InferenceScheduler.Job runLiveInference = this::runLiveInference;
+    private final Runnable showLiveResult = this::showLiveResult;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -36,98 +101,239 @@ public class MnistActivity extends AppCompatActivity {
         drawView = findViewById(R.id.draw_view);
         resultText = findViewById(R.id.result_text);
         previewImage = findViewById(R.id.preview_image);
+        stageStatsText = findViewById(R.id.text_stage_stats);
+
+        scheduler = ModelRegistry.getInstance(this).getScheduler(ModelRegistry.Model.MNIST);
+        previewBitmap = Bitmap.createBitmap(INPUT_SIZE, INPUT_SIZE, Bitmap.Config.ARGB_8888);
+        previewDrawable = new BitmapDrawable(getResources(), previewBitmap);
+        previewDrawable.setFilterBitmap(false);
 
         ImageButton btnBack = findViewById(R.id.btn_back_mnist);
         btnBack.setOnClickListener(v -> finish());
 
         Button btnClear = findViewById(R.id.btn_clear);
+        ImageButton btnUndo = findViewById(R.id.btn_undo);
+        ImageButton btnRedo = findViewById(R.id.btn_redo);
         Button btnClassify = findViewById(R.id.btn_classify);
+        Button btnLive = findViewById(R.id.btn_live_mnist);
 
         ImageButton btnExplain = findViewById(R.id.btn_explain);
 
         btnExplain.setOnClickListener(v -> {
-            Bitmap originalBitmap = drawView.getBitmap();
-            Bitmap smallBitmap = Bitmap.createScaledBitmap(originalBitmap, 28, 28, true);
-
-            java.io.ByteArrayOutputStream stream = new java.io.ByteArrayOutputStream();
-            smallBitmap.compress(Bitmap.CompressFormat.PNG, 100, stream);
-            byte[] byteArray = stream.toByteArray();
+            String sessionId = ExplanationSessionStore.getInstance().put(ModelRegistry.Model.MNIST,
+                    INPUT_SIZE, INPUT_SIZE, captureInputTensor(), null);
 
             Intent intent = new Intent(MnistActivity.this, ExplainActivity.class);
-            intent.putExtra("image_data", byteArray);
+            intent.putExtra(ExplanationSessionStore.EXTRA_SESSION_ID, sessionId);
             intent.putExtra("title", "Explainer: MNIST");
             startActivity(intent);
         });
 
-        try {
-            tflite = new Interpreter(loadModelFile());
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        modelHandle = ModelHandle.borrow(ModelRegistry.getInstance(this), ModelRegistry.Model.MNIST, this,
+                new ModelRegistry.Listener() {
+                    @Override
+                    public void onModelReady(@NonNull Interpreter interpreter) {
+                        inputCodec = ModelRegistry.inputCodec(interpreter, 0);
+                        outputCodec = ModelRegistry.outputCodec(interpreter, 0);
+                        modelInputs[0] = inputCodec.buffer();
+                        modelOutputs.put(0, outputCodec.buffer());
+                        liveInputCodec = ModelRegistry.inputCodec(interpreter, 0);
+                        liveOutputCodec = ModelRegistry.outputCodec(interpreter, 0);
+                        liveInputs[0] = liveInputCodec.buffer();
+                        liveOutputs.put(0, liveOutputCodec.buffer());
+                        // Zapis do pola volatile publikuje bufory wątkowi modelu
+                        tflite = interpreter;
+                    }
+
+                    @Override
+                    public void onModelFailed(@NonNull Exception error) {
+                        resultText.setText("Błąd modelu!");
+                    }
+                });
 
         btnClear.setOnClickListener(v -> {
             drawView.clearCanvas();
+            cancelLiveInference();
+            scheduler.cancel(classifySlot);
             resultText.setText("Narysuj cyfrę (0-9)");
             previewImage.setImageResource(0);
             previewImage.setBackgroundColor(Color.parseColor("#DDDDDD"));
         });
 
+        btnUndo.setOnClickListener(v -> drawView.undo());
+        btnRedo.setOnClickListener(v -> drawView.redo());
+
         btnClassify.setOnClickListener(v -> classifyDrawing());
+        profiler.setDetails(scheduler::summary);
+        profiler.attachOverlay(resultText, stageStatsText);
+
+        drawView.setOnDrawingChangedListener(this::onDrawingChanged);
+        drawView.setOnTouchLatencyListener(nanos -> profiler.record(STAGE_EVENT_TO_DRAW, nanos));
+        btnLive.setOnClickListener(v -> {
+            liveMode = !liveMode;
+            btnLive.setText(liveMode ? "Stop" : "Na żywo");
+            btnClassify.setEnabled(!liveMode);
+            if (liveMode) onDrawingChanged();
+            else cancelLiveInference();
+        });
     }
 
-    private void classifyDrawing() {
-        if (tflite == null) {
-            resultText.setText("Błąd modelu!");
-            return;
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        cancelLiveInference();
+        scheduler.cancel(classifySlot);
+    }
+
+    // Wywoływane na wątku UI po każdym odcinku pociągnięcia, więc musi być tanie
+    private void onDrawingChanged() {
+        if (!liveMode) return;
+        if (livePending.compareAndSet(false, true)) {
+            mainHandler.postDelayed(submitLiveInference, LIVE_INTERVAL_MS);
         }
+    }
 
-        Bitmap originalBitmap = drawView.getBitmap();
-        Bitmap smallBitmap = Bitmap.createScaledBitmap(originalBitmap, 28, 28, true);
+    private void cancelLiveInference() {
+        mainHandler.removeCallbacks(submitLiveInference);
+        scheduler.cancel(liveSlot);
+        livePending.set(false);
+    }
 
-        ByteBuffer inputBuffer = ByteBuffer.allocateDirect(4 * 28 * 28 * 1);
-        inputBuffer.order(ByteOrder.nativeOrder());
+    private void submitLiveInference() {
+        livePending.set(false);
+        scheduler.submit(liveSlot, LIVE_DEADLINE_MS, runLiveInference, showLiveResult);
+    }
 
-        Bitmap previewBitmap = Bitmap.createBitmap(28, 28, Bitmap.Config.ARGB_8888);
+    private boolean runLiveInference() {
+        // Siatka jest kopiowana dopiero tutaj, więc zawsze widzimy najnowszy stan rysunku
+        Interpreter interpreter = tflite;
+        if (interpreter == null) return false;
 
-        int[] pixels = new int[28 * 28];
-        smallBitmap.getPixels(pixels, 0, 28, 0, 0, 28, 28);
+        // Sekcje Trace zamykamy też po wyjątku: wątek modelu działa dalej
+        long start = profiler.begin(STAGE_SAMPLE);
+        try {
+            drawView.getCoverageGrid().copyTo(liveCells);
+        } finally {
+            profiler.end(STAGE_SAMPLE, start);
+        }
 
-        for (int i = 0; i < pixels.length; i++) {
-            int pixelValue = pixels[i];
-            int r = (pixelValue >> 16) & 0xFF;
-            float normalized = (255.0f - r) / 255.0f;
+        start = profiler.begin(STAGE_ENCODE);
+        try {
+            liveInputFloats.rewind();
+            synchronized (livePreviewPixels) {
+                TensorOps.encodeUnit(liveCells, liveInputFloats, livePreviewPixels);
+            }
+            liveInputCodec.encode(liveInputValues);
+        } finally {
+            profiler.end(STAGE_ENCODE, start);
+        }
 
-            inputBuffer.putFloat(normalized);
+        start = profiler.begin(STAGE_INFERENCE);
+        try {
+            interpreter.runForMultipleInputsOutputs(liveInputs, liveOutputs);
+        } finally {
+            profiler.end(STAGE_INFERENCE, start);
+        }
 
-            int previewGray = (int) (normalized * 255);
-            int previewColor = Color.rgb(previewGray, previewGray, previewGray);
-            previewBitmap.setPixel(i % 28, i / 28, previewColor);
+        start = profiler.begin(STAGE_DECODE);
+        try {
+            liveOutputCodec.decode(liveProbabilities);
+            liveDigit = TensorOps.argmax(liveProbabilities);
+            // argmax zwraca -1, gdy wszystkie wyjścia to NaN
+            liveConfidence = liveDigit >= 0 ? liveProbabilities[liveDigit] : 0.0f;
+        } finally {
+            profiler.end(STAGE_DECODE, start);
+        }
+        return true;
+    }
+
+    private void showLiveResult() {
+        if (!liveMode) return;
+        long start = profiler.begin(STAGE_UI);
+        try {
+            synchronized (livePreviewPixels) {
+                previewBitmap.setPixels(livePreviewPixels, 0, INPUT_SIZE, 0, 0, INPUT_SIZE, INPUT_SIZE);
+            }
+            previewImage.setImageDrawable(previewDrawable);
+            previewDrawable.invalidateSelf();
+            resultText.setText(formatResult(liveDigit, liveConfidence));
+        } finally {
+            profiler.end(STAGE_UI, start);
         }
+    }
 
-        Bitmap displayBitmap = Bitmap.createScaledBitmap(previewBitmap, 140, 140, false);
-        previewImage.setImageBitmap(displayBitmap);
+    // Dokładnie ten tensor, który dostaje model w obu trybach
+    private float[] captureInputTensor() {
+        float[] tensor = new float[INPUT_SIZE * INPUT_SIZE];
+        drawView.getCoverageGrid().copyTo(tensor);
+        return tensor;
+    }
+
+    private void classifyDrawing() {
+        if (tflite == null) {
+            resultText.setText("Błąd modelu!");
+            return;
+        }
+        scheduler.submit(classifySlot, CLASSIFY_DEADLINE_MS, runClassification, showClassification);
+    }
 
-        float[][] output = new float[1][10];
-        tflite.run(inputBuffer, output);
+    private boolean runClassification() {
+        Interpreter interpreter = tflite;
+        if (interpreter == null) return false;
 
-        int maxIndex = -1;
-        float maxProb = 0.0f;
-        for (int i = 0; i < 10; i++) {
-            if (output[0][i] > maxProb) {
-                maxProb = output[0][i];
-                maxIndex = i;
+        long start = profiler.begin(STAGE_SAMPLE);
+        try {
+            drawView.getCoverageGrid().copyTo(cells);
+        } finally {
+            profiler.end(STAGE_SAMPLE, start);
+        }
+
+        start = profiler.begin(STAGE_ENCODE);
+        try {
+            inputFloats.rewind();
+            synchronized (previewPixels) {
+                TensorOps.encodeUnit(cells, inputFloats, previewPixels);
             }
+            inputCodec.encode(inputValues);
+        } finally {
+            profiler.end(STAGE_ENCODE, start);
+        }
+
+        start = profiler.begin(STAGE_INFERENCE);
+        try {
+            interpreter.runForMultipleInputsOutputs(modelInputs, modelOutputs);
+        } finally {
+            profiler.end(STAGE_INFERENCE, start);
         }
 
-        resultText.setText(String.format("Cyfra: %d | Pewność: %.1f%%", maxIndex, maxProb * 100));
+        start = profiler.begin(STAGE_DECODE);
+        try {
+            outputCodec.decode(probabilities);
+            classifiedDigit = TensorOps.argmax(probabilities);
+            classifiedConfidence = classifiedDigit >= 0 ? probabilities[classifiedDigit] : 0.0f;
+        } finally {
+            profiler.end(STAGE_DECODE, start);
+        }
+        return true;
+    }
+
+    private void showClassification() {
+        if (liveMode) return;
+        long start = profiler.begin(STAGE_UI);
+        try {
+            synchronized (previewPixels) {
+                previewBitmap.setPixels(previewPixels, 0, INPUT_SIZE, 0, 0, INPUT_SIZE, INPUT_SIZE);
+            }
+            previewImage.setImageDrawable(previewDrawable);
+            previewDrawable.invalidateSelf();
+            resultText.setText(formatResult(classifiedDigit, classifiedConfidence));
+        } finally {
+            profiler.end(STAGE_UI, start);
+        }
     }
 
-    private MappedByteBuffer loadModelFile() throws IOException {
-        AssetFileDescriptor fileDescriptor = this.getAssets().openFd("mnist_model.tflite");
-        FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor());
-        FileChannel fileChannel = inputStream.getChannel();
-        long startOffset = fileDescriptor.getStartOffset();
-        long declaredLength = fileDescriptor.getDeclaredLength();
-        return fileChannel.map(FileChannel.MapMode.READ_ONLY, startOffset, declaredLength);
+    private static String formatResult(int digit, float confidence) {
+        if (digit < 0) return "Brak wyniku (nieprawidłowe wyjście modelu)";
+        return String.format("Cyfra: %d | Pewność: %.1f%%", digit, confidence * 100);
     }
 }
\ No newline at end of file
@@ -0,0 +1,64 @@
+package edu.jkiryla.aiexplainer;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import org.tensorflow.lite.Interpreter;
+
+/**
+ * Pożyczony interpreter z {@link ModelRegistry}. Zwracany automatycznie,
+ * gdy właściciel cyklu życia zostanie zniszczony.
+ */
+public final class ModelHandle implements DefaultLifecycleObserver {
+
+    final ModelRegistry.Model model;
+    private final ModelRegistry registry;
+    private ModelRegistry.Listener listener;
+    private Interpreter interpreter;
+    private boolean released;
+
+    ModelHandle(ModelRegistry registry, ModelRegistry.Model model, ModelRegistry.Listener listener) {
+        this.registry = registry;
+        this.model = model;
+        this.listener = listener;
+    }
+
+    public static ModelHandle borrow(ModelRegistry registry, ModelRegistry.Model model,
+                                     LifecycleOwner owner, ModelRegistry.Listener listener) {
+        ModelHandle handle = registry.borrow(model, listener);
+        owner.getLifecycle().addObserver(handle);
+        return handle;
+    }
+
+    @Nullable
+    public Interpreter get() {
+        return released ? null : interpreter;
+    }
+
+    void deliverReady(Interpreter ready) {
+        if (released) return;
+        interpreter = ready;
+        if (listener != null) listener.onModelReady(ready);
+    }
+
+    void deliverFailed(Exception error) {
+        if (released) return;
+        if (listener != null) listener.onModelFailed(error);
+    }
+
+    public void release() {
+        if (released) return;
+        released = true;
+        interpreter = null;
+        listener = null;
+        registry.giveBack(this);
+    }
+
+    @Override
+    public void onDestroy(@NonNull LifecycleOwner owner) {
+        owner.getLifecycle().removeObserver(this);
+        release();
+    }
+}
@@ -0,0 +1,472 @@
+package edu.jkiryla.aiexplainer;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import edu.jkiryla.aiexplainer.core.EvaluationStats;
+import edu.jkiryla.aiexplainer.core.TensorCodec;
+
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Wspólny rejestr modeli TFLite dla całego procesu.
+ * Modele są mapowane i rozgrzewane raz, na osobnym wątku, a aktywności pożyczają
+ * interpretery przez {@link ModelHandle} powiązany z ich cyklem życia.
+ * Jeśli obok modelu float32 leżą jego wersje kwantyzowane, używana jest najmniejsza,
+ * która przechodzi bramkę dokładności na dołączonym zbiorze prawdziwych, opisanych próbek
+ * ({@link Model#gateAssetName()}); bez tego zbioru wariant nie jest brany pod uwagę.
+ * Warianty i zbiór bramki tworzy się poza aplikacją: BatchEvaluationTest z evalExportGate,
+ * potem tools/quantize_models.py (kroki opisane w skrypcie).
+ * Przy pierwszym uruchomieniu mierzone są też ustawienia wykonania (wątki, XNNPACK),
+ * a najszybsze są stosowane do wszystkich tworzonych interpreterów.
+ * Wywołania współdzielonego interpretera idą przez {@link InferenceScheduler} modelu.
+ * Nieudane ładowanie jest ponawiane przy kolejnym pożyczeniu, po rosnącym odstępie.
+ */
+public final class ModelRegistry implements ComponentCallbacks2 {
+
+    private static final String TAG = "ModelRegistry";
+
+    public enum Model {
+        MNIST("mnist_model.tflite", false, "0", "1", "2", "3", "4", "5", "6", "7", "8", "9"),
+        FERPLUS("ferplus_model_pd_best.tflite", true,
+                "Neutralny", "Radość", "Zaskoczenie", "Smutek",
+                "Złość", "Obrzydzenie", "Strach", "Pogarda");
+
+        /** Model float32; wersje kwantyzowane mają przyrostek wariantu przed ".tflite". */
+        final String assetName;
+        /** Nazwy klas w kolejności wyjść modelu. */
+        final String[] labels;
+        /** Wyjście to logity, a nie prawdopodobieństwa: softmax liczy aplikacja. */
+        final boolean outputsLogits;
+
+        Model(String assetName, boolean outputsLogits, String... labels) {
+            this.assetName = assetName;
+            this.outputsLogits = outputsLogits;
+            this.labels = labels;
+        }
+
+        String assetName(Variant variant) {
+            return baseName() + variant.suffix + ".tflite";
+        }
+
+        /**
+         * Zbiór bramki dokładności: kilkaset prawdziwych próbek z etykietami w formacie
+         * {@link BatchEvaluator#tensorFile} (np. wyeksportowanych przez BatchEvaluationTest).
+         */
+        String gateAssetName() {
+            return baseName() + "_gate.bin";
+        }
+
+        private String baseName() {
+            return assetName.substring(0, assetName.length() - ".tflite".length());
+        }
+    }
+
+    /** Warianty modelu od najmniejszego i najszybszego. */
+    public enum Variant {
+        INT8("_int8"),
+        FLOAT16("_fp16"),
+        FLOAT32("");
+
+        final String suffix;
+
+        Variant(String suffix) {
+            this.suffix = suffix;
+        }
+    }
+
+    // Bramka dokładności: wariant może stracić najwyżej tyle trafności względem float32
+    private static final float MAX_ACCURACY_DROP = 0.01f;
+    private static final int MIN_GATE_SAMPLES = 100;
+    private static final String PREFS_NAME = "model_variants";
+    private static final String EXECUTION_PREFS_NAME = "execution_config";
+    static final String REPORT_DIR = "execution_report";
+    // Po nieudanym ładowaniu kolejne pożyczenie ponawia próbę, z odstępem rosnącym dwukrotnie
+    private static final long RETRY_BASE_MS = 1000;
+    private static final long RETRY_MAX_MS = 60_000;
+
+    public interface Listener {
+        void onModelReady(@NonNull Interpreter interpreter);
+
+        void onModelFailed(@NonNull Exception error);
+    }
+
+    private static final class Entry {
+        Interpreter interpreter;
+        Exception error;
+        int failures;
+        long retryAtNanos;
+        boolean loading;
+        int borrowCount;
+        long loadStartNanos;
+        long timeToFirstInferenceMs = -1;
+        Variant variant;
+        ExecutionConfig executionConfig;
+        InferenceScheduler scheduler;
+        final List<ModelHandle> waiting = new ArrayList<>();
+    }
+
+    private static volatile ModelRegistry instance;
+
+    private final Context appContext;
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(r -> new Thread(r, TAG));
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Map<Model, Entry> entries = new EnumMap<>(Model.class);
+    // Czas instalacji nie zmienia się w trakcie życia procesu
+    private volatile long installTime = -1;
+
+    private ModelRegistry(Context context) {
+        appContext = context.getApplicationContext();
+        for (Model model : Model.values()) {
+            entries.put(model, new Entry());
+        }
+        appContext.registerComponentCallbacks(this);
+    }
+
+    public static ModelRegistry getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ModelRegistry.class) {
+                if (instance == null) {
+                    instance = new ModelRegistry(context);
+                }
+            }
+        }
+        return instance;
+    }
+
+    public void preloadAll() {
+        for (Model model : Model.values()) {
+            synchronized (this) {
+                ensureLoading(model, entries.get(model));
+            }
+        }
+    }
+
+    public ModelHandle borrow(Model model, Listener listener) {
+        ModelHandle handle = new ModelHandle(this, model, listener);
+        Interpreter ready;
+        Exception failed;
+        synchronized (this) {
+            Entry entry = entries.get(model);
+            entry.borrowCount++;
+            ready = entry.interpreter;
+            failed = null;
+            if (ready == null) {
+                // Błąd zostaje zgłoszony tylko do czasu następnej próby
+                ensureLoading(model, entry);
+                failed = entry.error;
+                if (failed == null) entry.waiting.add(handle);
+            }
+        }
+        if (ready != null) {
+            handle.deliverReady(ready);
+        } else if (failed != null) {
+            handle.deliverFailed(failed);
+        }
+        return handle;
+    }
+
+    synchronized void giveBack(ModelHandle handle) {
+        Entry entry = entries.get(handle.model);
+        entry.waiting.remove(handle);
+        if (entry.borrowCount > 0) entry.borrowCount--;
+    }
+
+    public synchronized long getTimeToFirstInferenceMs(Model model) {
+        return entries.get(model).timeToFirstInferenceMs;
+    }
+
+    /** Wariant aktualnie używany przez interpreter albo null, jeśli model nie jest załadowany. */
+    public synchronized Variant getActiveVariant(Model model) {
+        return entries.get(model).variant;
+    }
+
+    /** Plik wariantu z czasem instalacji aplikacji; zmienia się razem z plikiem modelu. */
+    public String versionKey(Model model, Variant variant) {
+        return model.assetName(variant) + "@" + installTime();
+    }
+
+    /** Opcje interpretera z najszybszymi zmierzonymi ustawieniami dla tego modelu. */
+    public synchronized Interpreter.Options newOptions(Model model) {
+        ExecutionConfig config = entries.get(model).executionConfig;
+        return (config != null ? config : ExecutionConfig.DEFAULT).toOptions();
+    }
+
+    /**
+     * Osobny interpreter aktywnego wariantu z najwyżej {@code maxThreads} wątkami, np. przy
+     * przegrzaniu. Właścicielem jest wywołujący; zwykle woła się go na wątku modelu.
+     */
+    Interpreter newInterpreter(Model model, int maxThreads) throws IOException {
+        Variant variant;
+        ExecutionConfig config;
+        synchronized (this) {
+            Entry entry = entries.get(model);
+            variant = entry.variant != null ? entry.variant : Variant.FLOAT32;
+            config = entry.executionConfig != null ? entry.executionConfig : ExecutionConfig.DEFAULT;
+        }
+        int threads = config.numThreads > 0 ? Math.min(config.numThreads, maxThreads) : maxThreads;
+        return new Interpreter(loadModelFile(appContext, model.assetName(variant)),
+                new ExecutionConfig(threads, config.useXnnpack).toOptions());
+    }
+
+    /** Wątek wywołań interpretera danego modelu, tworzony przy pierwszym użyciu. */
+    synchronized InferenceScheduler getScheduler(Model model) {
+        Entry entry = entries.get(model);
+        if (entry.scheduler == null) entry.scheduler = new InferenceScheduler(model.name());
+        return entry.scheduler;
+    }
+
+    synchronized ExecutionConfig getExecutionConfig(Model model) {
+        return entries.get(model).executionConfig;
+    }
+
+    static TensorCodec inputCodec(Interpreter interpreter, int index) {
+        return codecFor(interpreter.getInputTensor(index));
+    }
+
+    static TensorCodec outputCodec(Interpreter interpreter, int index) {
+        return codecFor(interpreter.getOutputTensor(index));
+    }
+
+    private static TensorCodec codecFor(Tensor tensor) {
+        DataType dataType = tensor.dataType();
+        Tensor.QuantizationParams params = tensor.quantizationParams();
+        switch (dataType) {
+            case FLOAT32:
+                return new TensorCodec(TensorCodec.Type.FLOAT32, 0f, 0, tensor.numElements());
+            case UINT8:
+                return new TensorCodec(TensorCodec.Type.UINT8, params.getScale(), params.getZeroPoint(), tensor.numElements());
+            case INT8:
+                return new TensorCodec(TensorCodec.Type.INT8, params.getScale(), params.getZeroPoint(), tensor.numElements());
+            default:
+                throw new IllegalArgumentException("Unsupported tensor type " + dataType + " for " + tensor.name());
+        }
+    }
+
+    private void ensureLoading(Model model, Entry entry) {
+        if (entry.interpreter != null || entry.loading) return;
+        if (entry.error != null && SystemClock.elapsedRealtimeNanos() < entry.retryAtNanos) return;
+        entry.loading = true;
+        entry.error = null;
+        entry.loadStartNanos = SystemClock.elapsedRealtimeNanos();
+        loader.execute(() -> load(model));
+    }
+
+    private void load(Model model) {
+        Interpreter interpreter = null;
+        Exception error = null;
+        Variant variant = Variant.FLOAT32;
+        ExecutionConfig config = ExecutionConfig.DEFAULT;
+        try {
+            variant = selectVariant(model);
+            MappedByteBuffer modelBuffer = loadModelFile(appContext, model.assetName(variant));
+            config = selectExecutionConfig(model, variant, modelBuffer);
+            interpreter = new Interpreter(modelBuffer, config.toOptions());
+            warmUp(interpreter);
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Failed to load " + model.assetName(variant), e);
+            if (interpreter != null) interpreter.close();
+            interpreter = null;
+            error = e;
+        }
+
+        List<ModelHandle> toNotify;
+        synchronized (this) {
+            Entry entry = entries.get(model);
+            entry.loading = false;
+            entry.interpreter = interpreter;
+            entry.error = error;
+            if (interpreter == null) {
+                long delayMs = Math.min(RETRY_BASE_MS << Math.min(entry.failures, 6), RETRY_MAX_MS);
+                entry.failures++;
+                entry.retryAtNanos = SystemClock.elapsedRealtimeNanos() + delayMs * 1_000_000L;
+            } else {
+                entry.failures = 0;
+                entry.variant = variant;
+                entry.executionConfig = config;
+                entry.timeToFirstInferenceMs = (SystemClock.elapsedRealtimeNanos() - entry.loadStartNanos) / 1_000_000;
+                Log.i(TAG, model.assetName(variant) + " time-to-first-inference: " + entry.timeToFirstInferenceMs + " ms");
+            }
+            toNotify = new ArrayList<>(entry.waiting);
+            entry.waiting.clear();
+        }
+
+        final Interpreter ready = interpreter;
+        final Exception failed = error;
+        for (ModelHandle handle : toNotify) {
+            mainHandler.post(() -> {
+                if (ready != null) handle.deliverReady(ready);
+                else handle.deliverFailed(failed);
+            });
+        }
+    }
+
+    /**
+     * Wybiera najmniejszy dostępny wariant, który przechodzi bramkę dokładności.
+     * Wynik jest zapamiętywany do następnej aktualizacji aplikacji.
+     */
+    private Variant selectVariant(Model model) throws IOException {
+        Set<String> assets = new HashSet<>(Arrays.asList(appContext.getAssets().list("")));
+        SharedPreferences prefs = appContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String key = model.name() + "@" + installTime();
+        String remembered = prefs.getString(key, null);
+        if (remembered != null) {
+            Variant variant = Variant.valueOf(remembered);
+            if (assets.contains(model.assetName(variant))) return variant;
+        }
+
+        Variant selected = Variant.FLOAT32;
+        float referenceAccuracy = -1f;
+        for (Variant candidate : Variant.values()) {
+            if (candidate == Variant.FLOAT32) break;
+            if (!assets.contains(model.assetName(candidate))) continue;
+            if (!assets.contains(model.gateAssetName())) {
+                Log.w(TAG, "No " + model.gateAssetName() + ", skipping " + model.assetName(candidate));
+                break;
+            }
+            if (referenceAccuracy < 0) referenceAccuracy = measureAccuracy(model, Variant.FLOAT32);
+            float accuracy = measureAccuracy(model, candidate);
+            Log.i(TAG, model.assetName(candidate) + " gate accuracy " + accuracy + " (float32 " + referenceAccuracy + ")");
+            if (referenceAccuracy > 0 && accuracy >= referenceAccuracy - MAX_ACCURACY_DROP) {
+                selected = candidate;
+                break;
+            }
+        }
+        prefs.edit().putString(key, selected.name()).apply();
+        return selected;
+    }
+
+    /**
+     * Zapamiętane ustawienia wykonania albo, przy pierwszym uruchomieniu po instalacji,
+     * wynik pomiaru wszystkich kandydatów zapisany też w raporcie w filesDir.
+     */
+    private ExecutionConfig selectExecutionConfig(Model model, Variant variant, MappedByteBuffer modelBuffer) {
+        SharedPreferences prefs = appContext.getSharedPreferences(EXECUTION_PREFS_NAME, Context.MODE_PRIVATE);
+        String key = model.name() + "_" + variant.name() + "@" + installTime();
+        ExecutionConfig remembered = ExecutionConfig.decode(prefs.getString(key, null));
+        if (remembered != null) return remembered;
+
+        ExecutionTuner.Result result = ExecutionTuner.tune(modelBuffer);
+        String report = result.toReport(model.assetName(variant) + " (" + Runtime.getRuntime().availableProcessors() + " rdzeni)");
+        Log.i(TAG, report);
+        writeReport(model, report);
+        prefs.edit().putString(key, result.best.encode()).apply();
+        return result.best;
+    }
+
+    private void writeReport(Model model, String report) {
+        File dir = new File(appContext.getFilesDir(), REPORT_DIR);
+        if (!dir.isDirectory() && !dir.mkdirs()) return;
+        try (FileOutputStream out = new FileOutputStream(new File(dir, model.name() + ".txt"))) {
+            out.write(report.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write execution report", e);
+        }
+    }
+
+    private long installTime() {
+        if (installTime < 0) {
+            try {
+                installTime = appContext.getPackageManager().getPackageInfo(appContext.getPackageName(), 0).lastUpdateTime;
+            } catch (PackageManager.NameNotFoundException e) {
+                installTime = 0;
+            }
+        }
+        return installTime;
+    }
+
+    /** Trafność wariantu na zbiorze bramki; 0, gdy zbioru nie da się ocenić. */
+    private float measureAccuracy(Model model, Variant variant) {
+        try (BatchEvaluator evaluator = new BatchEvaluator(appContext, model, variant)) {
+            int elements = evaluator.getInputSize() * evaluator.getInputSize();
+            EvaluationStats stats;
+            try (BatchEvaluator.SampleSource source =
+                         BatchEvaluator.tensorAsset(appContext, model.gateAssetName(), elements)) {
+                stats = evaluator.evaluate(source, new int[]{1});
+            }
+            if (stats.getTotal() < MIN_GATE_SAMPLES) {
+                Log.w(TAG, model.gateAssetName() + " has only " + stats.getTotal() + " samples");
+                return 0f;
+            }
+            return stats.getAccuracy();
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Accuracy gate failed for " + model.assetName(variant), e);
+            return 0f;
+        }
+    }
+
+    private static void warmUp(Interpreter interpreter) {
+        int inputBytes = interpreter.getInputTensor(0).numBytes();
+        int outputBytes = interpreter.getOutputTensor(0).numBytes();
+        ByteBuffer input = ByteBuffer.allocateDirect(inputBytes).order(ByteOrder.nativeOrder());
+        ByteBuffer output = ByteBuffer.allocateDirect(outputBytes).order(ByteOrder.nativeOrder());
+        interpreter.run(input, output);
+    }
+
+    static MappedByteBuffer loadModelFile(Context context, String assetName) throws IOException {
+        try (AssetFileDescriptor fileDescriptor = context.getAssets().openFd(assetName);
+             FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor())) {
+            FileChannel fileChannel = inputStream.getChannel();
+            long startOffset = fileDescriptor.getStartOffset();
+            long declaredLength = fileDescriptor.getDeclaredLength();
+            return fileChannel.map(FileChannel.MapMode.READ_ONLY, startOffset, declaredLength);
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level < TRIM_MEMORY_UI_HIDDEN) return;
+        synchronized (this) {
+            for (Map.Entry<Model, Entry> e : entries.entrySet()) {
+                Entry entry = e.getValue();
+                if (entry.interpreter != null && entry.borrowCount == 0) {
+                    // Zamykamy na wątku interpretera, po zleceniach, które mogły już wystartować
+                    if (entry.scheduler != null) entry.scheduler.runAfterPending(entry.interpreter::close);
+                    else entry.interpreter.close();
+                    entry.interpreter = null;
+                    Log.i(TAG, "Released " + e.getKey().assetName + " (trim level " + level + ")");
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+    }
+}
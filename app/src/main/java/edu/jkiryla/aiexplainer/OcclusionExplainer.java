@@ -0,0 +1,129 @@
+package edu.jkiryla.aiexplainer;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import edu.jkiryla.aiexplainer.core.OcclusionMap;
+import edu.jkiryla.aiexplainer.core.TensorCodec;
+import edu.jkiryla.aiexplainer.core.TensorOps;
+
+import org.tensorflow.lite.Interpreter;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Mapa wrażliwości na okluzję dla klasy wybranej przez model. Oryginalne wejście i wszystkie
+ * zasłonięte warianty idą jednym wsadem [N, H, W, 1] ({@link Interpreter#resizeInput}),
+ * dzieląc go tylko wtedy, gdy wariantów jest więcej niż {@link #MAX_BATCH}.
+ * Używa własnego interpretera float32, jak {@link ActivationExtractor}.
+ */
+final class OcclusionExplainer implements Closeable {
+
+    static final class Result {
+        final int targetClass;
+        final float baseline;
+        final float[] heat;
+        final int variants;
+        final int invocations;
+        final long nanos;
+
+        Result(int targetClass, float baseline, float[] heat, int variants, int invocations, long nanos) {
+            this.targetClass = targetClass;
+            this.baseline = baseline;
+            this.heat = heat;
+            this.variants = variants;
+            this.invocations = invocations;
+            this.nanos = nanos;
+        }
+    }
+
+    private static final int MAX_BATCH = 256;
+    // Łata o boku 1/5 wejścia, przesuwana co 1/3 łaty
+    private static final float PATCH_FRACTION = 0.2f;
+
+    private final ModelRegistry.Model model;
+    private final Interpreter interpreter;
+    private final int width;
+    private final int height;
+    private final int numClasses;
+
+    OcclusionExplainer(Context context, ModelRegistry.Model model) throws IOException {
+        this.model = model;
+        interpreter = new Interpreter(ModelRegistry.loadModelFile(context, model.assetName),
+                ModelRegistry.getInstance(context).newOptions(model));
+        int[] shape = interpreter.getInputTensor(0).shape();
+        height = shape[1];
+        width = shape[2];
+        numClasses = interpreter.getOutputTensor(0).numElements();
+    }
+
+    Result explain(float[] input) {
+        long start = SystemClock.elapsedRealtimeNanos();
+        int patch = Math.max(2, Math.round(Math.min(width, height) * PATCH_FRACTION));
+        OcclusionMap map = new OcclusionMap(width, height, patch, Math.max(1, patch / 3));
+        // MNIST: łata w kolorze tła; twarze: średnia jasność, żeby nie dodawać krawędzi
+        float fill = model == ModelRegistry.Model.MNIST ? 0f : mean(input);
+
+        int elements = width * height;
+        int rows = map.getVariantCount() + 1; // wiersz 0 to wejście bez zasłonięcia
+        float[] scores = new float[rows];
+        float[] row = new float[numClasses];
+        int targetClass = -1;
+        int invocations = 0;
+        int batchSize = -1;
+        float[] batchInput = null;
+        float[] batchOutput = null;
+        TensorCodec inputCodec = null;
+        TensorCodec outputCodec = null;
+
+        for (int first = 0; first < rows; first += batchSize) {
+            int count = Math.min(MAX_BATCH, rows - first);
+            if (count != batchSize) {
+                batchSize = count;
+                interpreter.resizeInput(0, new int[]{batchSize, height, width, 1});
+                interpreter.allocateTensors();
+                inputCodec = ModelRegistry.inputCodec(interpreter, 0);
+                outputCodec = ModelRegistry.outputCodec(interpreter, 0);
+                batchInput = new float[batchSize * elements];
+                batchOutput = new float[batchSize * numClasses];
+            }
+
+            if (first == 0) {
+                System.arraycopy(input, 0, batchInput, 0, elements);
+                map.fillBatch(input, fill, 0, count - 1, batchInput, elements);
+            } else {
+                map.fillBatch(input, fill, first - 1, count, batchInput, 0);
+            }
+
+            inputCodec.encode(batchInput);
+            interpreter.run(inputCodec.buffer(), outputCodec.buffer());
+            invocations++;
+            outputCodec.decode(batchOutput);
+
+            for (int r = 0; r < count; r++) {
+                System.arraycopy(batchOutput, r * numClasses, row, 0, numClasses);
+                if (model.outputsLogits) TensorOps.softmaxInPlace(row);
+                if (targetClass < 0) targetClass = TensorOps.argmax(row);
+                scores[first + r] = row[targetClass];
+            }
+        }
+
+        float[] variantScores = new float[rows - 1];
+        System.arraycopy(scores, 1, variantScores, 0, variantScores.length);
+        float[] heat = map.heatmap(scores[0], variantScores);
+        return new Result(targetClass, scores[0], heat, rows - 1, invocations,
+                SystemClock.elapsedRealtimeNanos() - start);
+    }
+
+    private static float mean(float[] values) {
+        float sum = 0f;
+        for (float value : values) sum += value;
+        return values.length > 0 ? sum / values.length : 0f;
+    }
+
+    @Override
+    public void close() {
+        interpreter.close();
+    }
+}
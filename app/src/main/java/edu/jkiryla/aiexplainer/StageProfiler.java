@@ -0,0 +1,132 @@
+package edu.jkiryla.aiexplainer;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+import android.view.View;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import edu.jkiryla.aiexplainer.core.LatencyHistogram;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * Pomiar czasu etapów potoku: każdy etap trafia do własnego {@link LatencyHistogram}
+ * i do sekcji {@link Trace} ("nazwa:etap"), widocznej w śladach systemowych (Perfetto).
+ * {@link #begin} i {@link #end} muszą być wołane parami na tym samym wątku.
+ */
+final class StageProfiler {
+
+    private static final String TAG = "StageProfiler";
+    static final String DUMP_DIR = "stage_latency";
+    private static final long OVERLAY_REFRESH_MS = 500;
+
+    private final String name;
+    private final String[] stages;
+    private final String[] sections;
+    private final LatencyHistogram[] histograms;
+    private volatile Supplier<String> details;
+
+    StageProfiler(String name, String... stages) {
+        this.name = name;
+        this.stages = stages;
+        sections = new String[stages.length];
+        histograms = new LatencyHistogram[stages.length];
+        for (int i = 0; i < stages.length; i++) {
+            sections[i] = name + ":" + stages[i];
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    long begin(int stage) {
+        Trace.beginSection(sections[stage]);
+        return SystemClock.elapsedRealtimeNanos();
+    }
+
+    void end(int stage, long startNanos) {
+        histograms[stage].record(SystemClock.elapsedRealtimeNanos() - startNanos);
+        Trace.endSection();
+    }
+
+    /** Dla etapów mierzonych poza jednym wątkiem, np. od zdarzenia dotyku do rysowania. */
+    void record(int stage, long nanos) {
+        histograms[stage].record(nanos);
+    }
+
+    /** Dodatkowa linia podsumowania, np. metryki kolejki {@link InferenceScheduler}. */
+    void setDetails(Supplier<String> details) {
+        this.details = details;
+    }
+
+    void reset() {
+        for (LatencyHistogram histogram : histograms) histogram.reset();
+    }
+
+    String summary() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < stages.length; i++) {
+            if (i > 0) sb.append('\n');
+            LatencyHistogram h = histograms[i];
+            sb.append(String.format(Locale.US, "%-10s p50 %6.2f  p95 %6.2f ms  (n=%d)",
+                    stages[i], h.getPercentileMs(0.5), h.getPercentileMs(0.95), h.getCount()));
+        }
+        Supplier<String> extra = details;
+        if (extra != null) sb.append('\n').append(extra.get());
+        return sb.toString();
+    }
+
+    /** Zapisuje podsumowanie do filesDir/stage_latency, z modelem urządzenia w nazwie pliku. */
+    File dump(Context context) throws IOException {
+        File dir = new File(context.getFilesDir(), DUMP_DIR);
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+        String device = (Build.MANUFACTURER + "_" + Build.MODEL).replaceAll("[^A-Za-z0-9_-]", "_");
+        File file = new File(dir, name + "_" + device + "_" + System.currentTimeMillis() + ".txt");
+        String report = "device=" + Build.MANUFACTURER + " " + Build.MODEL + " sdk=" + Build.VERSION.SDK_INT
+                + "\npipeline=" + name + "\n" + summary() + "\n";
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(report.getBytes(StandardCharsets.UTF_8));
+        }
+        return file;
+    }
+
+    /**
+     * Długie przytrzymanie {@code toggle} pokazuje/ukrywa nakładkę z p50/p95 etapów,
+     * odświeżaną co pół sekundy; długie przytrzymanie nakładki zapisuje liczniki do pliku.
+     */
+    void attachOverlay(View toggle, TextView overlay) {
+        Runnable refresh = new Runnable() {
+            @Override
+            public void run() {
+                if (overlay.getVisibility() != View.VISIBLE) return;
+                overlay.setText(summary());
+                overlay.postDelayed(this, OVERLAY_REFRESH_MS);
+            }
+        };
+        toggle.setOnLongClickListener(v -> {
+            boolean show = overlay.getVisibility() != View.VISIBLE;
+            overlay.setVisibility(show ? View.VISIBLE : View.GONE);
+            overlay.removeCallbacks(refresh);
+            if (show) refresh.run();
+            return true;
+        });
+        overlay.setOnLongClickListener(v -> {
+            Context context = v.getContext();
+            try {
+                File file = dump(context);
+                Toast.makeText(context, "Zapisano: " + file.getName(), Toast.LENGTH_SHORT).show();
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to dump stage latencies", e);
+                Toast.makeText(context, "Błąd zapisu pomiarów", Toast.LENGTH_SHORT).show();
+            }
+            return true;
+        });
+    }
+}
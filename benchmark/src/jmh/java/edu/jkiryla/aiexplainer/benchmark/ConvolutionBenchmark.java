@@ -0,0 +1,79 @@
+package edu.jkiryla.aiexplainer.benchmark;
+
+import edu.jkiryla.aiexplainer.core.ConvolutionEngine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** Filtry krawędzi dla trybu wyjaśniania: jeden wątek, wszystkie rdzenie i wariant separowalny. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ConvolutionBenchmark {
+
+    @Param({Sizes.MNIST, Sizes.FERPLUS, Sizes.CAMERA})
+    public String size;
+
+    private static final ConvolutionEngine.Kernel[] SOBEL = {ConvolutionEngine.SOBEL_X, ConvolutionEngine.SOBEL_Y};
+
+    private int width;
+    private int height;
+    private int[] argb;
+    private float[] luma;
+    private float[][] responses;
+    private float[] combined;
+    private ConvolutionEngine singleThread;
+
+    @Setup
+    public void setUp() {
+        width = Sizes.width(size);
+        height = Sizes.height(size);
+        Random random = new Random(3);
+        argb = new int[width * height];
+        for (int i = 0; i < argb.length; i++) argb[i] = 0xFF000000 | random.nextInt(0x1000000);
+        luma = new float[width * height];
+        ConvolutionEngine.lumaFromArgb(argb, luma);
+        responses = new float[][]{new float[width * height], new float[width * height]};
+        combined = new float[width * height];
+        singleThread = new ConvolutionEngine(1);
+    }
+
+    @Benchmark
+    public float[] lumaFromArgb() {
+        ConvolutionEngine.lumaFromArgb(argb, luma);
+        return luma;
+    }
+
+    @Benchmark
+    public float[] fusedSobelSingleThread() {
+        singleThread.convolveFused(luma, width, height, SOBEL, responses, combined);
+        return combined;
+    }
+
+    @Benchmark
+    public float[] fusedSobelAllCores() {
+        ConvolutionEngine.shared().convolveFused(luma, width, height, SOBEL, responses, combined);
+        return combined;
+    }
+
+    @Benchmark
+    public float[] separableSobel() {
+        singleThread.convolveSeparable(luma, width, height, ConvolutionEngine.SOBEL_X, responses[0]);
+        return responses[0];
+    }
+
+    @Benchmark
+    public int[] toArgb() {
+        ConvolutionEngine.toArgb(combined, argb);
+        return argb;
+    }
+}
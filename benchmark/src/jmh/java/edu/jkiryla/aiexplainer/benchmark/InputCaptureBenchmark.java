@@ -0,0 +1,72 @@
+package edu.jkiryla.aiexplainer.benchmark;
+
+import edu.jkiryla.aiexplainer.core.CoverageGrid;
+import edu.jkiryla.aiexplainer.core.LumaPreprocessor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wejście o stałych rozmiarach, bez parametru: wycinek twarzy 48x48 z lumy klatki kamery
+ * i siatka pokrycia MNIST z pociągnięcia palcem.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class InputCaptureBenchmark {
+
+    // Klatka kamery 320x240 z wyrównaniem wierszy, tak jak zwraca ją CameraX
+    private static final int FRAME_WIDTH = 320;
+    private static final int FRAME_HEIGHT = 240;
+    private static final int ROW_STRIDE = 336;
+    private ByteBuffer luma;
+    private LumaPreprocessor lumaPreprocessor;
+    private FloatBuffer lumaOut;
+    private int[] lumaPreview;
+
+    private CoverageGrid coverageGrid;
+    private float[] cells;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        int outputSize = Sizes.width(Sizes.FERPLUS);
+        luma = ByteBuffer.allocateDirect(ROW_STRIDE * FRAME_HEIGHT);
+        for (int i = 0; i < luma.capacity(); i++) luma.put(i, (byte) random.nextInt(256));
+        lumaPreprocessor = new LumaPreprocessor(outputSize);
+        lumaOut = ByteBuffer.allocateDirect(4 * outputSize * outputSize).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        lumaPreview = new int[outputSize * outputSize];
+
+        coverageGrid = new CoverageGrid(Sizes.width(Sizes.MNIST));
+        coverageGrid.setViewSize(1080, 1080);
+        cells = new float[Sizes.width(Sizes.MNIST) * Sizes.height(Sizes.MNIST)];
+    }
+
+    @Benchmark
+    public FloatBuffer lumaCenterCrop() {
+        lumaOut.rewind();
+        lumaPreprocessor.processCenterCrop(luma, ROW_STRIDE, 1, FRAME_WIDTH, FRAME_HEIGHT, 270,
+                LumaPreprocessor.DEFAULT_CROP_FRACTION, lumaOut, lumaPreview);
+        return lumaOut;
+    }
+
+    /** Jedno pociągnięcie przez cały widok i odczyt siatki, jak w trybie rysowania na żywo. */
+    @Benchmark
+    public float[] coverageStroke() {
+        coverageGrid.clear();
+        coverageGrid.addSegment(100f, 200f, 900f, 800f, 60f);
+        coverageGrid.copyTo(cells);
+        return cells;
+    }
+}
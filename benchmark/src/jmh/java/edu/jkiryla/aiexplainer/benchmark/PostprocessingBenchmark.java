@@ -0,0 +1,74 @@
+package edu.jkiryla.aiexplainer.benchmark;
+
+import edu.jkiryla.aiexplainer.core.FeatureMapTiler;
+import edu.jkiryla.aiexplainer.core.TensorCodec;
+import edu.jkiryla.aiexplainer.core.TensorOps;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** Obróbka wyjść: softmax i argmax, dekwantyzacja i kafelkowanie map aktywacji. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PostprocessingBenchmark {
+
+    @Param({Sizes.MNIST, Sizes.FERPLUS, Sizes.CAMERA})
+    public String size;
+
+    // Liczba filtrów mapy aktywacji, jak w pierwszej konwolucji modeli
+    private static final int CHANNELS = 32;
+
+    private float[] logits;
+    private float[] logitsSource;
+    private TensorCodec int8Codec;
+    private float[] decoded;
+    private float[] activation;
+    private int[] activationShape;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(2);
+        // Wyjście MNIST ma 10 klas, FER+ 8; dla klatki kamery liczymy wyjście FER+
+        int classes = Sizes.MNIST.equals(size) ? 10 : 8;
+        logitsSource = new float[classes];
+        for (int i = 0; i < classes; i++) logitsSource[i] = random.nextFloat() * 10f - 5f;
+        logits = new float[classes];
+
+        int pixels = Sizes.width(size) * Sizes.height(size);
+        int8Codec = new TensorCodec(TensorCodec.Type.INT8, 1f / 255f, -128, pixels);
+        int8Codec.encode(new float[pixels]);
+        decoded = new float[pixels];
+
+        activationShape = new int[]{1, Sizes.height(size), Sizes.width(size), CHANNELS};
+        activation = new float[pixels * CHANNELS];
+        for (int i = 0; i < activation.length; i++) activation[i] = random.nextFloat();
+    }
+
+    @Benchmark
+    public int softmaxArgmax() {
+        System.arraycopy(logitsSource, 0, logits, 0, logits.length);
+        TensorOps.softmaxInPlace(logits);
+        return TensorOps.argmax(logits);
+    }
+
+    @Benchmark
+    public float[] dequantizeInt8() {
+        int8Codec.decode(decoded);
+        return decoded;
+    }
+
+    @Benchmark
+    public FeatureMapTiler.Tiles tileActivations() {
+        return FeatureMapTiler.render(activation, activationShape);
+    }
+}
@@ -0,0 +1,71 @@
+package edu.jkiryla.aiexplainer.benchmark;
+
+import edu.jkiryla.aiexplainer.core.TensorCodec;
+import edu.jkiryla.aiexplainer.core.TensorOps;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Przygotowanie wejścia modeli zależne od rozmiaru: normalizacja pikseli i kwantyzacja.
+ * Luma z kamery i siatka pokrycia mają stałe rozmiary, więc są w {@link InputCaptureBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PreprocessingBenchmark {
+
+    @Param({Sizes.MNIST, Sizes.FERPLUS, Sizes.CAMERA})
+    public String size;
+
+    private int[] argb;
+    private int[] preview;
+    private float[] values;
+    private FloatBuffer floats;
+    private TensorCodec int8Codec;
+
+    @Setup
+    public void setUp() {
+        int pixels = Sizes.width(size) * Sizes.height(size);
+        Random random = new Random(1);
+        argb = new int[pixels];
+        for (int i = 0; i < pixels; i++) argb[i] = 0xFF000000 | random.nextInt(0x1000000);
+        preview = new int[pixels];
+        values = new float[pixels];
+        for (int i = 0; i < pixels; i++) values[i] = random.nextFloat();
+        floats = ByteBuffer.allocateDirect(4 * pixels).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        int8Codec = new TensorCodec(TensorCodec.Type.INT8, 1f / 255f, -128, pixels);
+    }
+
+    @Benchmark
+    public FloatBuffer encodeInvertedRed() {
+        floats.rewind();
+        TensorOps.encodeInvertedRed(argb, floats, preview);
+        return floats;
+    }
+
+    @Benchmark
+    public FloatBuffer encodeUnit() {
+        floats.rewind();
+        TensorOps.encodeUnit(values, floats, preview);
+        return floats;
+    }
+
+    @Benchmark
+    public ByteBuffer quantizeInt8() {
+        int8Codec.encode(values);
+        return int8Codec.buffer();
+    }
+}
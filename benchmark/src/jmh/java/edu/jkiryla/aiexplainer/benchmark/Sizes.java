@@ -0,0 +1,20 @@
+package edu.jkiryla.aiexplainer.benchmark;
+
+/** Rozmiary obrazów używane w aplikacji: wejście MNIST, wejście FER+ i klatka analizy kamery. */
+final class Sizes {
+
+    static final String MNIST = "28x28";
+    static final String FERPLUS = "48x48";
+    static final String CAMERA = "320x240";
+
+    private Sizes() {
+    }
+
+    static int width(String size) {
+        return Integer.parseInt(size.substring(0, size.indexOf('x')));
+    }
+
+    static int height(String size) {
+        return Integer.parseInt(size.substring(size.indexOf('x') + 1));
+    }
+}
@@ -0,0 +1,83 @@
+package edu.jkiryla.aiexplainer.core;
+
+/**
+ * {@link RateController} z drabiną poziomów od pełnego tempa do najoszczędniejszego.
+ * Temperatura i oszczędzanie baterii wyznaczają minimalny poziom od razu. Czas wywołań
+ * przesuwa poziom o jeden stopień: w dół, gdy średnia (EWMA) przez kilka próbek przekracza
+ * budżet, czyli połowę odstępu między klatkami; w górę dopiero po dłuższej serii wywołań
+ * mieszczących się z zapasem w budżecie szybszego poziomu, żeby poziom nie oscylował.
+ */
+public final class AdaptiveRateController implements RateController {
+
+    static final Settings[] LEVELS = {
+            new Settings(30f, 320, 240, 0),
+            new Settings(10f, 320, 240, 2),
+            new Settings(5f, 176, 144, 2),
+            new Settings(2f, 176, 144, 1),
+    };
+
+    private static final float LATENCY_ALPHA = 0.2f;
+    private static final float BUDGET_FRACTION = 0.5f;
+    // Powrót na szybszy poziom, gdy wywołania zajmują mniej niż połowę jego budżetu
+    private static final float RECOVERY_FRACTION = 0.5f;
+    static final int DEGRADE_SAMPLES = 5;
+    static final int RECOVER_SAMPLES = 30;
+    private static final int POWER_SAVE_LEVEL = 2;
+
+    private int thermalLevel;
+    private int powerSaveLevel;
+    private int latencyLevel;
+    private float latencyEwmaNanos = -1f;
+    private int overBudget;
+    private int underBudget;
+
+    @Override
+    public synchronized void onThermalStatus(int status) {
+        if (status >= THERMAL_CRITICAL) thermalLevel = 3;
+        else if (status == THERMAL_SEVERE) thermalLevel = 2;
+        else if (status == THERMAL_MODERATE) thermalLevel = 1;
+        else thermalLevel = 0;
+    }
+
+    @Override
+    public synchronized void onPowerSaveMode(boolean enabled) {
+        powerSaveLevel = enabled ? POWER_SAVE_LEVEL : 0;
+    }
+
+    @Override
+    public synchronized void onInferenceLatency(long nanos) {
+        latencyEwmaNanos = latencyEwmaNanos < 0 ? nanos
+                : latencyEwmaNanos + LATENCY_ALPHA * (nanos - latencyEwmaNanos);
+        int level = currentLevel();
+
+        if (latencyEwmaNanos > budgetNanos(level)) {
+            underBudget = 0;
+            if (++overBudget >= DEGRADE_SAMPLES && level < LEVELS.length - 1) {
+                latencyLevel = level + 1;
+                overBudget = 0;
+            }
+        } else if (latencyLevel > 0 && latencyEwmaNanos < budgetNanos(latencyLevel - 1) * RECOVERY_FRACTION) {
+            overBudget = 0;
+            if (++underBudget >= RECOVER_SAMPLES) {
+                latencyLevel--;
+                underBudget = 0;
+            }
+        } else {
+            overBudget = 0;
+            underBudget = 0;
+        }
+    }
+
+    @Override
+    public synchronized Settings getSettings() {
+        return LEVELS[currentLevel()];
+    }
+
+    private int currentLevel() {
+        return Math.max(latencyLevel, Math.max(thermalLevel, powerSaveLevel));
+    }
+
+    private static float budgetNanos(int level) {
+        return LEVELS[level].getMinIntervalNanos() * BUDGET_FRACTION;
+    }
+}
@@ -0,0 +1,126 @@
+package edu.jkiryla.aiexplainer.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Dwupoziomowa pamięć podręczna adresowana treścią: LRU w pamięci ograniczone rozmiarem,
+ * pod nim opcjonalny {@link DiskBlobStore}. Trafienie z dysku jest przenoszone do pamięci
+ * (jako ten sam zmapowany widok, bez kopii). Wartości są zwracane jako widoki tylko do odczytu.
+ * Klucze buduje {@link #contentKey}, więc te same dane wejściowe i ta sama wersja modelu
+ * dają ten sam wpis także po restarcie aplikacji.
+ */
+public final class BlobCache {
+
+    private final long maxMemoryBytes;
+    private final DiskBlobStore disk;
+    private final LinkedHashMap<String, ByteBuffer> memory = new LinkedHashMap<>(32, 0.75f, true);
+    private long memoryBytes;
+    private long memoryHits;
+    private long diskHits;
+    private long misses;
+
+    public BlobCache(long maxMemoryBytes, DiskBlobStore disk) {
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.disk = disk;
+    }
+
+    /**
+     * Skrót SHA-256 (hex) przestrzeni nazw, np. modelu z wersją i rodzaju wpisu, oraz bitów
+     * wartości tensora. Bezpieczny jako nazwa pliku.
+     */
+    public static String contentKey(String namespace, float[] values) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update(namespace.getBytes(StandardCharsets.UTF_8));
+        byte[] chunk = new byte[4 * 256];
+        for (int start = 0; start < values.length; start += 256) {
+            int count = Math.min(256, values.length - start);
+            for (int i = 0; i < count; i++) {
+                int bits = Float.floatToIntBits(values[start + i]);
+                chunk[4 * i] = (byte) (bits >>> 24);
+                chunk[4 * i + 1] = (byte) (bits >>> 16);
+                chunk[4 * i + 2] = (byte) (bits >>> 8);
+                chunk[4 * i + 3] = (byte) bits;
+            }
+            digest.update(chunk, 0, 4 * count);
+        }
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >>> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /** Zwraca własny widok (pozycja 0) na zapisaną wartość albo null. */
+    public ByteBuffer get(String key) {
+        synchronized (this) {
+            ByteBuffer value = memory.get(key);
+            if (value != null) {
+                memoryHits++;
+                return value.duplicate();
+            }
+        }
+        ByteBuffer value = disk != null ? disk.get(key) : null;
+        synchronized (this) {
+            if (value == null) {
+                misses++;
+                return null;
+            }
+            diskHits++;
+            putInMemory(key, value);
+        }
+        return value.duplicate();
+    }
+
+    /** Zapisuje w obu poziomach; błąd zapisu na dysk zostawia wpis tylko w pamięci. */
+    public void put(String key, byte[] value) throws IOException {
+        synchronized (this) {
+            putInMemory(key, ByteBuffer.wrap(value).asReadOnlyBuffer());
+        }
+        if (disk != null) disk.put(key, value);
+    }
+
+    public synchronized void clearMemory() {
+        memory.clear();
+        memoryBytes = 0;
+    }
+
+    private void putInMemory(String key, ByteBuffer value) {
+        if (value.capacity() > maxMemoryBytes) return;
+        ByteBuffer previous = memory.put(key, value);
+        if (previous != null) memoryBytes -= previous.capacity();
+        memoryBytes += value.capacity();
+        Iterator<Map.Entry<String, ByteBuffer>> it = memory.entrySet().iterator();
+        while (memoryBytes > maxMemoryBytes && it.hasNext()) {
+            memoryBytes -= it.next().getValue().capacity();
+            it.remove();
+        }
+    }
+
+    public synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    public synchronized long getMemoryHits() {
+        return memoryHits;
+    }
+
+    public synchronized long getDiskHits() {
+        return diskHits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+}
@@ -0,0 +1,245 @@
+package edu.jkiryla.aiexplainer.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Konwolucje na płaszczyźnie jasności do renderowania map cech.
+ * Kilka jąder NxN jest liczonych w jednym przejściu po obrazie, jądra separowalne w dwóch
+ * przejściach 1D, a wiersze są dzielone na pasy wykonywane równolegle na wszystkich rdzeniach.
+ * Na krawędziach obrazu piksele są powielane (clamp-to-edge).
+ */
+public final class ConvolutionEngine {
+
+    public static final class Kernel {
+        public final int size;
+        public final float[] weights;
+        public final float[] column;
+        public final float[] row;
+
+        private Kernel(int size, float[] weights, float[] column, float[] row) {
+            this.size = size;
+            this.weights = weights;
+            this.column = column;
+            this.row = row;
+        }
+
+        /** Jądro NxN zapisane wierszami. */
+        public static Kernel of(int size, float... weights) {
+            if (size % 2 == 0 || weights.length != size * size) {
+                throw new IllegalArgumentException("Kernel must be odd-sized and have size*size weights");
+            }
+            return new Kernel(size, weights.clone(), null, null);
+        }
+
+        /** Jądro separowalne: column[ky] * row[kx]. */
+        public static Kernel separable(float[] column, float[] row) {
+            if (column.length != row.length || column.length % 2 == 0) {
+                throw new IllegalArgumentException("Separable kernel must be odd-sized and square");
+            }
+            int size = row.length;
+            float[] weights = new float[size * size];
+            for (int ky = 0; ky < size; ky++) {
+                for (int kx = 0; kx < size; kx++) {
+                    weights[ky * size + kx] = column[ky] * row[kx];
+                }
+            }
+            return new Kernel(size, weights, column.clone(), row.clone());
+        }
+
+        public boolean isSeparable() {
+            return row != null;
+        }
+    }
+
+    public static final Kernel SOBEL_X = Kernel.separable(new float[]{1, 2, 1}, new float[]{-1, 0, 1});
+    public static final Kernel SOBEL_Y = Kernel.separable(new float[]{-1, 0, 1}, new float[]{1, 2, 1});
+
+    // Poniżej tej liczby pikseli koszt rozdzielenia pracy przewyższa zysk
+    private static final int PARALLEL_THRESHOLD = 64 * 64;
+    private static final int MIN_TILE_ROWS = 16;
+
+    private static volatile ConvolutionEngine shared;
+
+    private final int threads;
+    private final ExecutorService executor;
+    private float[] scratch = new float[0];
+
+    public ConvolutionEngine(int threads) {
+        this.threads = Math.max(1, threads);
+        this.executor = this.threads > 1 ? Executors.newFixedThreadPool(this.threads, r -> {
+            Thread thread = new Thread(r, "ConvolutionEngine");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    public static ConvolutionEngine shared() {
+        if (shared == null) {
+            synchronized (ConvolutionEngine.class) {
+                if (shared == null) {
+                    shared = new ConvolutionEngine(Runtime.getRuntime().availableProcessors());
+                }
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Liczy wszystkie {@code kernels} w jednym przejściu. {@code outputs[k]} może być null,
+     * jeśli potrzebne jest tylko {@code combinedMaxAbs} (max |odpowiedzi| po jądrach, może być null).
+     */
+    public void convolveFused(float[] src, int width, int height, Kernel[] kernels, float[][] outputs, float[] combinedMaxAbs) {
+        int size = kernels[0].size;
+        for (Kernel kernel : kernels) {
+            if (kernel.size != size) throw new IllegalArgumentException("Fused kernels must have equal size");
+        }
+        float[][] weights = new float[kernels.length][];
+        for (int k = 0; k < kernels.length; k++) weights[k] = kernels[k].weights;
+
+        forEachTile(height, width * height, (rowStart, rowEnd) ->
+                fusedRows(src, width, height, size, weights, outputs, combinedMaxAbs, rowStart, rowEnd));
+    }
+
+    /** Jądro separowalne w dwóch przejściach 1D (2N zamiast N^2 mnożeń na piksel). */
+    public void convolveSeparable(float[] src, int width, int height, Kernel kernel, float[] out) {
+        if (!kernel.isSeparable()) {
+            convolveFused(src, width, height, new Kernel[]{kernel}, new float[][]{out}, null);
+            return;
+        }
+        synchronized (this) {
+            if (scratch.length < width * height) scratch = new float[width * height];
+            float[] temp = scratch;
+            int radius = kernel.size / 2;
+            forEachTile(height, width * height, (rowStart, rowEnd) ->
+                    horizontalRows(src, temp, width, kernel.row, radius, rowStart, rowEnd));
+            forEachTile(height, width * height, (rowStart, rowEnd) ->
+                    verticalRows(temp, out, width, height, kernel.column, radius, rowStart, rowEnd));
+        }
+    }
+
+    /** Zamienia odpowiedzi filtra na szare piksele ARGB (|wartość| obcięta do 255). */
+    public static void toArgb(float[] values, int[] argb) {
+        for (int i = 0; i < values.length; i++) {
+            int gray = (int) Math.abs(values[i]);
+            if (gray > 255) gray = 255;
+            argb[i] = 0xFF000000 | (gray << 16) | (gray << 8) | gray;
+        }
+    }
+
+    /** Jasność 0..255 z pikseli ARGB. */
+    public static void lumaFromArgb(int[] argb, float[] luma) {
+        for (int i = 0; i < argb.length; i++) {
+            int pixel = argb[i];
+            luma[i] = ((pixel >> 16) & 0xFF) * 0.299f + ((pixel >> 8) & 0xFF) * 0.587f + (pixel & 0xFF) * 0.114f;
+        }
+    }
+
+    private interface RowTask {
+        void run(int rowStart, int rowEnd);
+    }
+
+    private void forEachTile(int height, int pixels, RowTask task) {
+        if (executor == null || pixels < PARALLEL_THRESHOLD) {
+            task.run(0, height);
+            return;
+        }
+        int tileRows = Math.max(MIN_TILE_ROWS, (height + threads * 2 - 1) / (threads * 2));
+        List<Callable<Void>> tiles = new ArrayList<>();
+        for (int start = 0; start < height; start += tileRows) {
+            final int rowStart = start;
+            final int rowEnd = Math.min(height, start + tileRows);
+            tiles.add(() -> {
+                task.run(rowStart, rowEnd);
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> future : executor.invokeAll(tiles)) future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private static void fusedRows(float[] src, int width, int height, int size, float[][] weights,
+                                  float[][] outputs, float[] combined, int rowStart, int rowEnd) {
+        int radius = size / 2;
+        int kernelCount = weights.length;
+        float[] sums = new float[kernelCount];
+
+        for (int y = rowStart; y < rowEnd; y++) {
+            boolean interiorRow = y >= radius && y < height - radius;
+            for (int x = 0; x < width; x++) {
+                java.util.Arrays.fill(sums, 0f);
+                if (interiorRow && x >= radius && x < width - radius) {
+                    // Wnętrze obrazu: bez sprawdzania granic
+                    int w = 0;
+                    for (int ky = -radius; ky <= radius; ky++) {
+                        int base = (y + ky) * width + x - radius;
+                        for (int kx = 0; kx < size; kx++, w++) {
+                            float value = src[base + kx];
+                            for (int k = 0; k < kernelCount; k++) sums[k] += value * weights[k][w];
+                        }
+                    }
+                } else {
+                    int w = 0;
+                    for (int ky = -radius; ky <= radius; ky++) {
+                        int sy = clamp(y + ky, height);
+                        for (int kx = -radius; kx <= radius; kx++, w++) {
+                            float value = src[sy * width + clamp(x + kx, width)];
+                            for (int k = 0; k < kernelCount; k++) sums[k] += value * weights[k][w];
+                        }
+                    }
+                }
+
+                int index = y * width + x;
+                float maxAbs = 0f;
+                for (int k = 0; k < kernelCount; k++) {
+                    if (outputs != null && outputs[k] != null) outputs[k][index] = sums[k];
+                    float abs = Math.abs(sums[k]);
+                    if (abs > maxAbs) maxAbs = abs;
+                }
+                if (combined != null) combined[index] = maxAbs;
+            }
+        }
+    }
+
+    private static void horizontalRows(float[] src, float[] dst, int width, float[] row, int radius,
+                                       int rowStart, int rowEnd) {
+        for (int y = rowStart; y < rowEnd; y++) {
+            int base = y * width;
+            for (int x = 0; x < width; x++) {
+                float sum = 0f;
+                for (int k = -radius; k <= radius; k++) {
+                    sum += src[base + clamp(x + k, width)] * row[k + radius];
+                }
+                dst[base + x] = sum;
+            }
+        }
+    }
+
+    private static void verticalRows(float[] src, float[] dst, int width, int height, float[] column, int radius,
+                                     int rowStart, int rowEnd) {
+        for (int y = rowStart; y < rowEnd; y++) {
+            int base = y * width;
+            for (int x = 0; x < width; x++) {
+                float sum = 0f;
+                for (int k = -radius; k <= radius; k++) {
+                    sum += src[clamp(y + k, height) * width + x] * column[k + radius];
+                }
+                dst[base + x] = sum;
+            }
+        }
+    }
+
+    private static int clamp(int value, int limit) {
+        return value < 0 ? 0 : (value >= limit ? limit - 1 : value);
+    }
+}
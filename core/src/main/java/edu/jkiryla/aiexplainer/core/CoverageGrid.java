@@ -0,0 +1,86 @@
+package edu.jkiryla.aiexplainer.core;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Siatka pokrycia tuszem w rozdzielczości wejścia MNIST (0 = tło, 1 = tusz).
+ * Aktualizowana przyrostowo odcinkami pociągnięć podanymi we współrzędnych widoku,
+ * więc nie trzeba skalować całej bitmapy płótna przed każdą klasyfikacją.
+ */
+public final class CoverageGrid {
+
+    private final int size;
+    private final float[] cells;
+    private float cellWidth = 1f;
+    private float cellHeight = 1f;
+
+    public CoverageGrid(int size) {
+        this.size = size;
+        this.cells = new float[size * size];
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public synchronized void setViewSize(int width, int height) {
+        cellWidth = Math.max(1f, (float) width / size);
+        cellHeight = Math.max(1f, (float) height / size);
+    }
+
+    public synchronized void clear() {
+        java.util.Arrays.fill(cells, 0f);
+    }
+
+    /**
+     * Dodaje odcinek (x0,y0)-(x1,y1) o grubości {@code strokeWidth} z zaokrąglonymi końcami.
+     * Przeliczane są tylko komórki w prostokącie otaczającym odcinek.
+     */
+    public synchronized void addSegment(float x0, float y0, float x1, float y1, float strokeWidth) {
+        float radius = strokeWidth / 2f;
+        // Pokrycie narasta liniowo na szerokości jednej komórki wokół krawędzi pociągnięcia
+        float feather = (cellWidth + cellHeight) / 2f;
+
+        int minCx = clamp((int) ((Math.min(x0, x1) - radius - feather) / cellWidth));
+        int maxCx = clamp((int) ((Math.max(x0, x1) + radius + feather) / cellWidth));
+        int minCy = clamp((int) ((Math.min(y0, y1) - radius - feather) / cellHeight));
+        int maxCy = clamp((int) ((Math.max(y0, y1) + radius + feather) / cellHeight));
+
+        float dx = x1 - x0;
+        float dy = y1 - y0;
+        float lengthSq = dx * dx + dy * dy;
+
+        for (int cy = minCy; cy <= maxCy; cy++) {
+            float py = (cy + 0.5f) * cellHeight;
+            for (int cx = minCx; cx <= maxCx; cx++) {
+                float px = (cx + 0.5f) * cellWidth;
+
+                float t = lengthSq > 0f ? ((px - x0) * dx + (py - y0) * dy) / lengthSq : 0f;
+                if (t < 0f) t = 0f;
+                else if (t > 1f) t = 1f;
+                float ex = px - (x0 + t * dx);
+                float ey = py - (y0 + t * dy);
+                float distance = (float) Math.sqrt(ex * ex + ey * ey);
+
+                float coverage = (radius - distance) / feather + 0.5f;
+                if (coverage <= 0f) continue;
+                if (coverage > 1f) coverage = 1f;
+
+                int index = cy * size + cx;
+                if (coverage > cells[index]) cells[index] = coverage;
+            }
+        }
+    }
+
+    public synchronized void copyTo(float[] out) {
+        System.arraycopy(cells, 0, out, 0, cells.length);
+    }
+
+    public synchronized void copyTo(FloatBuffer out) {
+        out.put(cells);
+    }
+
+    private int clamp(int cell) {
+        return cell < 0 ? 0 : (cell >= size ? size - 1 : cell);
+    }
+}
@@ -0,0 +1,135 @@
+package edu.jkiryla.aiexplainer.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Magazyn bloków na dysku: jeden plik na klucz, odczyt jako widok tylko do odczytu na plik
+ * zmapowany w pamięć, bez kopii na stercie. Plik nigdy nie jest nadpisywany w miejscu (zapis
+ * przez zmianę nazwy), więc zwrócony widok pozostaje ważny także po zastąpieniu lub usunięciu wpisu.
+ * Łączny rozmiar jest ograniczony; przy przekroczeniu usuwane są najdawniej używane pliki.
+ * Kolejność użycia jest trzymana w pamięci i zapisywana w czasach modyfikacji plików dopiero
+ * przy zapisie, skąd jest odtwarzana po restarcie.
+ * Klucze muszą być bezpiecznymi nazwami plików, np. skrótami w hex.
+ */
+public final class DiskBlobStore {
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File directory;
+    private final long maxBytes;
+    // Rozmiary plików w kolejności użycia, od najdawniej używanego
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long totalBytes;
+    // Klucze odczytane od ostatniego zapisu kolejności na dysk
+    private final Set<String> readSinceSync = new HashSet<>();
+
+    public DiskBlobStore(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        File[] files = directory.listFiles();
+        if (files == null) {
+            directory.mkdirs();
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if (file.getName().endsWith(TEMP_SUFFIX)) {
+                file.delete(); // przerwany zapis
+                continue;
+            }
+            entries.put(file.getName(), file.length());
+            totalBytes += file.length();
+        }
+        trim();
+    }
+
+    /** Widok tylko do odczytu na zawartość wpisu albo null. */
+    public synchronized ByteBuffer get(String key) {
+        if (entries.get(key) == null) return null;
+        try (RandomAccessFile in = new RandomAccessFile(new File(directory, key), "r");
+             FileChannel channel = in.getChannel()) {
+            // Mapowanie zostaje ważne po zamknięciu kanału
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            readSinceSync.add(key);
+            return mapped;
+        } catch (IOException e) {
+            remove(key);
+            return null;
+        }
+    }
+
+    /** Zapis przez plik tymczasowy i zmianę nazwy, więc przerwany zapis nie zostawia uszkodzonego wpisu. */
+    public synchronized void put(String key, byte[] value) throws IOException {
+        if (value.length > maxBytes) return;
+        File temp = new File(directory, key + TEMP_SUFFIX);
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(value);
+        }
+        File file = new File(directory, key);
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Cannot store " + file);
+        }
+        Long previous = entries.put(key, (long) value.length);
+        if (previous != null) totalBytes -= previous;
+        totalBytes += value.length;
+        trim();
+        syncAccessOrder();
+    }
+
+    public synchronized void remove(String key) {
+        Long size = entries.remove(key);
+        if (size != null) totalBytes -= size;
+        readSinceSync.remove(key);
+        new File(directory, key).delete();
+    }
+
+    public synchronized long getSizeBytes() {
+        return totalBytes;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            totalBytes -= eldest.getValue();
+            new File(directory, eldest.getKey()).delete();
+            readSinceSync.remove(eldest.getKey());
+            it.remove();
+        }
+    }
+
+    /**
+     * Zapisuje kolejność użycia w czasach modyfikacji: od pierwszego odczytanego wpisu
+     * do końca kolejki czasy rosną, więc po restarcie kolejność jest ta sama.
+     */
+    private void syncAccessOrder() {
+        if (readSinceSync.isEmpty()) return;
+        List<String> tail = new ArrayList<>();
+        for (String key : entries.keySet()) {
+            if (tail.isEmpty() && !readSinceSync.contains(key)) continue;
+            tail.add(key);
+        }
+        long time = System.currentTimeMillis();
+        for (String key : tail) new File(directory, key).setLastModified(time++);
+        readSinceSync.clear();
+    }
+}
@@ -0,0 +1,116 @@
+package edu.jkiryla.aiexplainer.core;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Wyniki ewaluacji wsadowej: trafność, macierz pomyłek oraz przepustowość
+ * i percentyle opóźnień osobno dla każdego rozmiaru wsadu.
+ */
+public final class EvaluationStats {
+
+    private static final class BatchTimings {
+        long[] nanos = new long[64];
+        int count;
+        long images;
+        long totalNanos;
+
+        void add(long elapsedNanos, int batchImages) {
+            if (count == nanos.length) nanos = Arrays.copyOf(nanos, count * 2);
+            nanos[count++] = elapsedNanos;
+            images += batchImages;
+            totalNanos += elapsedNanos;
+        }
+    }
+
+    private final String[] labels;
+    private final long[][] confusion;
+    private long correct;
+    private long total;
+    private final Map<Integer, BatchTimings> timings = new TreeMap<>();
+
+    public EvaluationStats(String[] labels) {
+        this.labels = labels.clone();
+        confusion = new long[labels.length][labels.length];
+    }
+
+    public void recordPrediction(int expected, int predicted) {
+        if (expected < 0 || expected >= labels.length) {
+            throw new IllegalArgumentException("Unknown label index " + expected);
+        }
+        total++;
+        if (expected == predicted) correct++;
+        if (predicted >= 0 && predicted < labels.length) confusion[expected][predicted]++;
+    }
+
+    /** Czas jednego wywołania modelu dla wsadu {@code batchSize}, w którym było {@code images} obrazów. */
+    public void recordBatch(int batchSize, int images, long elapsedNanos) {
+        BatchTimings batch = timings.get(batchSize);
+        if (batch == null) {
+            batch = new BatchTimings();
+            timings.put(batchSize, batch);
+        }
+        batch.add(elapsedNanos, images);
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public float getAccuracy() {
+        return total == 0 ? 0f : correct / (float) total;
+    }
+
+    /** Wiersz to klasa oczekiwana, kolumna to klasa przewidziana. */
+    public long[][] getConfusionMatrix() {
+        long[][] copy = new long[confusion.length][];
+        for (int i = 0; i < confusion.length; i++) copy[i] = confusion[i].clone();
+        return copy;
+    }
+
+    public double getImagesPerSecond(int batchSize) {
+        BatchTimings batch = timings.get(batchSize);
+        return batch == null || batch.totalNanos == 0 ? 0 : batch.images * 1e9 / batch.totalNanos;
+    }
+
+    /** Percentyl opóźnienia wsadu w milisekundach (metoda najbliższej rangi). */
+    public double getLatencyPercentileMs(int batchSize, double percentile) {
+        BatchTimings batch = timings.get(batchSize);
+        if (batch == null || batch.count == 0) return 0;
+        long[] sorted = Arrays.copyOf(batch.nanos, batch.count);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))] / 1e6;
+    }
+
+    public String toReport() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.US, "Trafność: %.2f%% (%d/%d)%n", getAccuracy() * 100, correct, total));
+
+        report.append(String.format(Locale.US, "%nMacierz pomyłek (wiersz = oczekiwana, kolumna = przewidziana)%n"));
+        int width = 6;
+        for (String label : labels) width = Math.max(width, label.length() + 1);
+        report.append(String.format(Locale.US, "%" + width + "s", ""));
+        for (String label : labels) report.append(String.format(Locale.US, "%" + width + "s", label));
+        report.append('\n');
+        for (int i = 0; i < labels.length; i++) {
+            report.append(String.format(Locale.US, "%" + width + "s", labels[i]));
+            for (int j = 0; j < labels.length; j++) {
+                report.append(String.format(Locale.US, "%" + width + "d", confusion[i][j]));
+            }
+            report.append('\n');
+        }
+
+        report.append(String.format(Locale.US, "%n%6s %12s %9s %9s %9s%n", "wsad", "obrazy/s", "p50 ms", "p95 ms", "p99 ms"));
+        for (int batchSize : timings.keySet()) {
+            report.append(String.format(Locale.US, "%6d %12.1f %9.2f %9.2f %9.2f%n", batchSize,
+                    getImagesPerSecond(batchSize),
+                    getLatencyPercentileMs(batchSize, 50),
+                    getLatencyPercentileMs(batchSize, 95),
+                    getLatencyPercentileMs(batchSize, 99)));
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,159 @@
+package edu.jkiryla.aiexplainer.core;
+
+/**
+ * Śledzi kwadratowy obszar twarzy między klatkami kluczowymi, na których działa detektor.
+ * Z każdej detekcji zapamiętywany jest rzadki wzorzec jasności, a w kolejnych klatkach szukane
+ * jest jego przesunięcie w małym oknie (suma różnic bezwzględnych po odjęciu średniej,
+ * więc zmiany oświetlenia nie przesuwają wyniku). Gdy dopasowanie jest zbyt słabe, obszar
+ * jest porzucany, a następna klatka staje się kluczowa.
+ */
+public final class FaceTracker {
+
+    // Wzorzec: siatka GRID x GRID punktów w środkowej części obszaru
+    private static final int GRID = 16;
+    private static final float TEMPLATE_EXTENT = 0.8f;
+    // Średnia różnica (0..255) powyżej której uznajemy, że twarz zgubiono
+    private static final float LOST_THRESHOLD = 28f;
+    // Po nieudanej detekcji detektor wraca dopiero po tylu klatkach, żeby nie działał na każdej
+    private static final int MISS_RETRY_FRAMES = 5;
+    private static final int NOW = Integer.MAX_VALUE / 2;
+
+    private final int keyframeInterval;
+    private final int searchRadius;
+
+    private final int[] offsetX = new int[GRID * GRID];
+    private final int[] offsetY = new int[GRID * GRID];
+    private final float[] template = new float[GRID * GRID];
+
+    private boolean hasRoi;
+    private float centerX;
+    private float centerY;
+    private float size;
+    private int framesSinceKeyframe = NOW;
+
+    /**
+     * @param keyframeInterval co ile klatek uruchamiać detektor mimo udanego śledzenia
+     * @param searchRadius     maksymalne przesunięcie między klatkami, w pikselach obrazu śledzenia
+     */
+    public FaceTracker(int keyframeInterval, int searchRadius) {
+        this.keyframeInterval = keyframeInterval;
+        this.searchRadius = searchRadius;
+    }
+
+    public boolean needsKeyframe() {
+        return framesSinceKeyframe >= (hasRoi ? keyframeInterval : MISS_RETRY_FRAMES);
+    }
+
+    public boolean hasRoi() {
+        return hasRoi;
+    }
+
+    public float getCenterX() {
+        return centerX;
+    }
+
+    public float getCenterY() {
+        return centerY;
+    }
+
+    public float getSize() {
+        return size;
+    }
+
+    public void reset() {
+        hasRoi = false;
+        framesSinceKeyframe = NOW;
+    }
+
+    /** Wynik detektora na klatce kluczowej (współrzędne obrazu {@code frame}). */
+    public void onDetection(byte[] frame, int width, int height, float centerX, float centerY, float size) {
+        this.size = Math.min(size, Math.min(width, height));
+        this.centerX = clampCenter(centerX, this.size, width);
+        this.centerY = clampCenter(centerY, this.size, height);
+        hasRoi = true;
+        framesSinceKeyframe = 0;
+
+        float extent = this.size * TEMPLATE_EXTENT;
+        int cx = Math.round(this.centerX);
+        int cy = Math.round(this.centerY);
+        for (int gy = 0; gy < GRID; gy++) {
+            for (int gx = 0; gx < GRID; gx++) {
+                int i = gy * GRID + gx;
+                offsetX[i] = Math.round((gx + 0.5f) / GRID * extent - extent / 2);
+                offsetY[i] = Math.round((gy + 0.5f) / GRID * extent - extent / 2);
+                template[i] = sample(frame, width, height, cx + offsetX[i], cy + offsetY[i]);
+            }
+        }
+        subtractMean(template);
+    }
+
+    /** Detektor nie znalazł twarzy na klatce kluczowej. */
+    public void onDetectionMissed() {
+        hasRoi = false;
+        framesSinceKeyframe = 0;
+    }
+
+    /**
+     * Przesuwa obszar do najlepszego dopasowania wzorca w tej klatce (wołać dla każdej klatki,
+     * która nie jest kluczowa). Zwraca false, jeśli obszaru nie ma albo twarz właśnie zgubiono.
+     */
+    public boolean track(byte[] frame, int width, int height) {
+        framesSinceKeyframe++;
+        if (!hasRoi) return false;
+
+        int cx = Math.round(centerX);
+        int cy = Math.round(centerY);
+        float bestScore = Float.MAX_VALUE;
+        int bestDx = 0;
+        int bestDy = 0;
+        int n = template.length;
+        for (int dy = -searchRadius; dy <= searchRadius; dy++) {
+            for (int dx = -searchRadius; dx <= searchRadius; dx++) {
+                int x = cx + dx;
+                int y = cy + dy;
+                int sum = 0;
+                for (int i = 0; i < n; i++) sum += sample(frame, width, height, x + offsetX[i], y + offsetY[i]);
+                float mean = sum / (float) n;
+                float sad = 0f;
+                for (int i = 0; i < n && sad <= bestScore * n; i++) {
+                    sad += Math.abs(sample(frame, width, height, x + offsetX[i], y + offsetY[i]) - mean - template[i]);
+                }
+                float score = sad / n;
+                // Przy remisie wygrywa mniejsze przesunięcie
+                if (score < bestScore || (score == bestScore && dx * dx + dy * dy < bestDx * bestDx + bestDy * bestDy)) {
+                    bestScore = score;
+                    bestDx = dx;
+                    bestDy = dy;
+                }
+            }
+        }
+
+        if (bestScore > LOST_THRESHOLD) {
+            // Zgubiona twarz: detektor od razu w następnej klatce
+            hasRoi = false;
+            framesSinceKeyframe = NOW;
+            return false;
+        }
+        centerX = clampCenter(cx + bestDx, size, width);
+        centerY = clampCenter(cy + bestDy, size, height);
+        return true;
+    }
+
+    private static int sample(byte[] frame, int width, int height, int x, int y) {
+        x = x < 0 ? 0 : (x >= width ? width - 1 : x);
+        y = y < 0 ? 0 : (y >= height ? height - 1 : y);
+        return frame[y * width + x] & 0xFF;
+    }
+
+    private static float clampCenter(float center, float size, int limit) {
+        float half = size / 2;
+        return Math.max(half, Math.min(limit - half, center));
+    }
+
+    private static void subtractMean(float[] values) {
+        float sum = 0f;
+        for (float v : values) sum += v;
+        float mean = sum / values.length;
+        for (int i = 0; i < values.length; i++) values[i] -= mean;
+    }
+}
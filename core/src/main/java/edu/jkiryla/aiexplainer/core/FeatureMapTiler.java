@@ -0,0 +1,84 @@
+package edu.jkiryla.aiexplainer.core;
+
+/**
+ * Zamienia tensor aktywacji na siatkę kafelków w skali szarości (jeden kafelek na kanał).
+ * Wyjścia gęste [1, N] są rysowane jako siatka N pól znormalizowanych wspólnie.
+ */
+public final class FeatureMapTiler {
+
+    public static final class Tiles {
+        public final int width;
+        public final int height;
+        public final int[] pixels;
+
+        Tiles(int width, int height, int[] pixels) {
+            this.width = width;
+            this.height = height;
+            this.pixels = pixels;
+        }
+    }
+
+    private static final int GAP = 1;
+    private static final int GAP_COLOR = 0xFF3498DB;
+
+    private FeatureMapTiler() {
+    }
+
+    public static Tiles render(float[] values, int[] shape) {
+        if (shape.length == 4) {
+            return renderChannels(values, shape[1], shape[2], shape[3]);
+        }
+        return renderVector(values);
+    }
+
+    private static Tiles renderChannels(float[] values, int height, int width, int channels) {
+        int cols = (int) Math.ceil(Math.sqrt(channels));
+        int rows = (channels + cols - 1) / cols;
+        int outWidth = cols * width + (cols - 1) * GAP;
+        int outHeight = rows * height + (rows - 1) * GAP;
+        int[] pixels = new int[outWidth * outHeight];
+        java.util.Arrays.fill(pixels, GAP_COLOR);
+
+        for (int c = 0; c < channels; c++) {
+            // Normalizacja osobno dla każdego kanału (układ NHWC)
+            float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+            for (int i = c; i < values.length; i += channels) {
+                if (values[i] < min) min = values[i];
+                if (values[i] > max) max = values[i];
+            }
+            float scale = max > min ? 255f / (max - min) : 0f;
+
+            int originX = (c % cols) * (width + GAP);
+            int originY = (c / cols) * (height + GAP);
+            for (int y = 0; y < height; y++) {
+                int row = (originY + y) * outWidth + originX;
+                for (int x = 0; x < width; x++) {
+                    int gray = (int) ((values[(y * width + x) * channels + c] - min) * scale);
+                    pixels[row + x] = 0xFF000000 | (gray << 16) | (gray << 8) | gray;
+                }
+            }
+        }
+        return new Tiles(outWidth, outHeight, pixels);
+    }
+
+    private static Tiles renderVector(float[] values) {
+        int n = values.length;
+        int cols = (int) Math.ceil(Math.sqrt(n));
+        int rows = (n + cols - 1) / cols;
+
+        float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+        for (float v : values) {
+            if (v < min) min = v;
+            if (v > max) max = v;
+        }
+        float scale = max > min ? 255f / (max - min) : 0f;
+
+        int[] pixels = new int[cols * rows];
+        java.util.Arrays.fill(pixels, GAP_COLOR);
+        for (int i = 0; i < n; i++) {
+            int gray = (int) ((values[i] - min) * scale);
+            pixels[i] = 0xFF000000 | (gray << 16) | (gray << 8) | gray;
+        }
+        return new Tiles(cols, rows, pixels);
+    }
+}
@@ -0,0 +1,66 @@
+package edu.jkiryla.aiexplainer.core;
+
+/**
+ * Liczy tempo i pominięte klatki na podstawie znaczników czasu kamery.
+ * Klatkę uznajemy za pominiętą, gdy odstęp między kolejnymi analizowanymi klatkami
+ * jest wielokrotnością najkrótszego zaobserwowanego odstępu (okresu sensora).
+ */
+public final class FrameRateCounter {
+
+    private static final long WINDOW_NANOS = 1_000_000_000L;
+
+    private long lastTimestampNanos = -1;
+    private long minIntervalNanos = Long.MAX_VALUE;
+    private long windowStartNanos = -1;
+    private int framesInWindow;
+    private float fps;
+    private long droppedFrames;
+    private long throttledFrames;
+
+    public synchronized void onFrame(long timestampNanos) {
+        if (lastTimestampNanos >= 0) {
+            long interval = timestampNanos - lastTimestampNanos;
+            if (interval > 0) {
+                if (interval < minIntervalNanos) minIntervalNanos = interval;
+                long missed = Math.round((double) interval / minIntervalNanos) - 1;
+                if (missed > 0) droppedFrames += missed;
+            }
+        }
+        lastTimestampNanos = timestampNanos;
+
+        if (windowStartNanos < 0) windowStartNanos = timestampNanos;
+        framesInWindow++;
+        long elapsed = timestampNanos - windowStartNanos;
+        if (elapsed >= WINDOW_NANOS) {
+            fps = framesInWindow * 1_000_000_000f / elapsed;
+            framesInWindow = 0;
+            windowStartNanos = timestampNanos;
+        }
+    }
+
+    /** Klatka odebrana, ale celowo pominięta, bo przyszła przed docelowym terminem. */
+    public synchronized void onFrameThrottled() {
+        throttledFrames++;
+    }
+
+    public synchronized void reset() {
+        lastTimestampNanos = -1;
+        windowStartNanos = -1;
+        framesInWindow = 0;
+        fps = 0;
+        droppedFrames = 0;
+        throttledFrames = 0;
+    }
+
+    public synchronized float getFps() {
+        return fps;
+    }
+
+    public synchronized long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    public synchronized long getThrottledFrames() {
+        return throttledFrames;
+    }
+}
@@ -0,0 +1,82 @@
+package edu.jkiryla.aiexplainer.core;
+
+/**
+ * Pierścień ostatnich klatek: wejście modelu, wyjście i znacznik czasu, w tablicach
+ * prymitywów przydzielonych z góry. Zapis nie alokuje. Klatki adresuje się krokami
+ * wstecz od najnowszej (0 = najnowsza).
+ *
+ * <p>{@link #shareInput} oddaje tablicę wejścia bez kopiowania; slot jest wtedy oznaczony
+ * jako współdzielony i przy nadpisaniu dostaje nową tablicę, więc oddana pozostaje nietknięta.
+ */
+public final class FrameRing {
+
+    private final int capacity;
+    private final int inputElements;
+    private final int outputElements;
+    private final float[][] inputs;
+    private final boolean[] shared;
+    private final float[] outputs;
+    private final long[] timestamps;
+    private int next;
+    private int size;
+
+    public FrameRing(int capacity, int inputElements, int outputElements) {
+        this.capacity = capacity;
+        this.inputElements = inputElements;
+        this.outputElements = outputElements;
+        inputs = new float[capacity][inputElements];
+        shared = new boolean[capacity];
+        outputs = new float[capacity * outputElements];
+        timestamps = new long[capacity];
+    }
+
+    /** Zapisuje klatkę w miejsce najstarszej. */
+    public synchronized void write(long timestampNanos, float[] input, float[] output) {
+        if (shared[next]) {
+            inputs[next] = new float[inputElements];
+            shared[next] = false;
+        }
+        System.arraycopy(input, 0, inputs[next], 0, inputElements);
+        System.arraycopy(output, 0, outputs, next * outputElements, outputElements);
+        timestamps[next] = timestampNanos;
+        next = (next + 1) % capacity;
+        if (size < capacity) size++;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized long getTimestamp(int back) {
+        return timestamps[slot(back)];
+    }
+
+    public synchronized void copyOutput(int back, float[] out) {
+        System.arraycopy(outputs, slot(back) * outputElements, out, 0, outputElements);
+    }
+
+    public synchronized void copyInput(int back, float[] out) {
+        System.arraycopy(inputs[slot(back)], 0, out, 0, inputElements);
+    }
+
+    /** Tablica wejścia klatki bez kopii; wywołujący może ją zatrzymać, ale nie powinien jej zmieniać. */
+    public synchronized float[] shareInput(int back) {
+        int slot = slot(back);
+        shared[slot] = true;
+        return inputs[slot];
+    }
+
+    public synchronized void clear() {
+        size = 0;
+        next = 0;
+    }
+
+    private int slot(int back) {
+        if (back < 0 || back >= size) throw new IndexOutOfBoundsException("back " + back + ", size " + size);
+        return (next - 1 - back + capacity) % capacity;
+    }
+}
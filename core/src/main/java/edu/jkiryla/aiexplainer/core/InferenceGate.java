@@ -0,0 +1,73 @@
+package edu.jkiryla.aiexplainer.core;
+
+/**
+ * Pomija wnioskowanie dla klatek prawie identycznych z ostatnią przeliczoną.
+ * Miarą zmiany jest średnia różnica bezwzględna wejścia modelu (0..1); co najwyżej
+ * {@code maxConsecutiveSkips} klatek z rzędu może zostać pominiętych. Zlicza też,
+ * ile klatek pominięto i ile czasu modelu dzięki temu zaoszczędzono.
+ */
+public final class InferenceGate {
+
+    private final float threshold;
+    private final int maxConsecutiveSkips;
+    private final float[] lastInput;
+    private boolean hasLastInput;
+    private int consecutiveSkips;
+
+    private long inferred;
+    private long skipped;
+    private double averageInferenceMs;
+    private double savedMs;
+
+    public InferenceGate(int inputLength, float threshold, int maxConsecutiveSkips) {
+        this.lastInput = new float[inputLength];
+        this.threshold = threshold;
+        this.maxConsecutiveSkips = maxConsecutiveSkips;
+    }
+
+    /** True, jeśli model trzeba uruchomić; false oznacza, że można użyć poprzedniego wyniku. */
+    public synchronized boolean shouldRun(float[] input) {
+        if (!hasLastInput || consecutiveSkips >= maxConsecutiveSkips) return true;
+        float limit = threshold * input.length;
+        float sum = 0f;
+        for (int i = 0; i < input.length; i++) {
+            sum += Math.abs(input[i] - lastInput[i]);
+            if (sum > limit) return true;
+        }
+        return false;
+    }
+
+    public synchronized void onInferred(float[] input, long elapsedNanos) {
+        System.arraycopy(input, 0, lastInput, 0, lastInput.length);
+        hasLastInput = true;
+        consecutiveSkips = 0;
+        double ms = elapsedNanos / 1e6;
+        averageInferenceMs = inferred == 0 ? ms : averageInferenceMs * 0.9 + ms * 0.1;
+        inferred++;
+    }
+
+    public synchronized void onSkipped() {
+        consecutiveSkips++;
+        skipped++;
+        savedMs += averageInferenceMs;
+    }
+
+    public synchronized void reset() {
+        hasLastInput = false;
+        consecutiveSkips = 0;
+        inferred = 0;
+        skipped = 0;
+        averageInferenceMs = 0;
+        savedMs = 0;
+    }
+
+    public synchronized float getSkipRatio() {
+        long total = inferred + skipped;
+        return total == 0 ? 0f : skipped / (float) total;
+    }
+
+    /** Szacunek: pominięte klatki razy średni czas wnioskowania. */
+    public synchronized long getSavedMs() {
+        return Math.round(savedMs);
+    }
+}
@@ -0,0 +1,70 @@
+package edu.jkiryla.aiexplainer.core;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram czasów o stałym rozmiarze, bez blokad: {@link #record} to jeden
+ * {@code incrementAndGet}, więc można go wołać z wątku kamery, a czytać z wątku UI.
+ * Kubełki są logarytmiczne, po cztery na każde podwojenie (w mikrosekundach),
+ * co daje błąd percentyla poniżej 12,5% w zakresie od 1 µs do ponad godziny.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 4;
+    private static final int SUB_BITS = 2;
+    static final int BUCKETS = 128;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    public void record(long nanos) {
+        counts.incrementAndGet(bucketOf(Math.max(0, nanos) / 1000));
+    }
+
+    public long getCount() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) total += counts.get(i);
+        return total;
+    }
+
+    /**
+     * Przybliżony percentyl ({@code fraction} z 0..1) w milisekundach: środek kubełka,
+     * w który on wpada; 0 dla pustego histogramu. Zapisy równoległe z odczytem mogą
+     * przesunąć wynik o pojedyncze próbki.
+     */
+    public double getPercentileMs(double fraction) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return (lowerBoundMicros(i) + lowerBoundMicros(i + 1)) / 2000.0;
+            }
+        }
+        return lowerBoundMicros(BUCKETS - 1) / 1000.0;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < 2 * SUB_BUCKETS) return (int) micros;
+        int octave = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >>> (octave - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return Math.min(BUCKETS - 1, SUB_BUCKETS * (octave - SUB_BITS + 1) + sub);
+    }
+
+    static long lowerBoundMicros(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) return bucket;
+        int octave = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        int sub = bucket % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub) << (octave - SUB_BITS);
+    }
+}
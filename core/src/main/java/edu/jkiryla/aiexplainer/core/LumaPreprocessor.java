@@ -0,0 +1,145 @@
+package edu.jkiryla.aiexplainer.core;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Przygotowuje wejście modelu bezpośrednio z płaszczyzny Y (luma) klatki YUV_420_888.
+ * Wycięcie, obrót i uśrednianie obszarowe do rozmiaru wyjściowego odbywają się w jednym
+ * przejściu po buforze kamery, bez tworzenia żadnej bitmapy.
+ */
+public final class LumaPreprocessor {
+
+    public static final float DEFAULT_CROP_FRACTION = 0.6f;
+
+    private final int outputSize;
+
+    public LumaPreprocessor(int outputSize) {
+        this.outputSize = outputSize;
+    }
+
+    public int getOutputSize() {
+        return outputSize;
+    }
+
+    public static int uprightWidth(int width, int height, int rotationDegrees) {
+        return rotationDegrees % 180 == 0 ? width : height;
+    }
+
+    public static int uprightHeight(int width, int height, int rotationDegrees) {
+        return rotationDegrees % 180 == 0 ? height : width;
+    }
+
+    /**
+     * Wycina środkowy kwadrat o boku {@code cropFraction} krótszego wymiaru.
+     */
+    public void processCenterCrop(ByteBuffer luma, int rowStride, int pixelStride, int width, int height,
+                           int rotationDegrees, float cropFraction, FloatBuffer out, int[] previewArgb) {
+        int uprightW = uprightWidth(width, height, rotationDegrees);
+        int uprightH = uprightHeight(width, height, rotationDegrees);
+        int cropSize = Math.max(1, (int) (Math.min(uprightW, uprightH) * cropFraction));
+        int left = (uprightW - cropSize) / 2;
+        int top = (uprightH - cropSize) / 2;
+        process(luma, rowStride, pixelStride, width, height, rotationDegrees,
+                left, top, cropSize, out, previewArgb);
+    }
+
+    /**
+     * Uśrednia kwadrat {@code cropSize} zaczepiony w (cropLeft, cropTop) we współrzędnych
+     * obrazu już obróconego o {@code rotationDegrees}. Wynik (0..1) trafia do {@code out}
+     * od jego bieżącej pozycji, wierszami; {@code previewArgb} może być null.
+     */
+    public void process(ByteBuffer luma, int rowStride, int pixelStride, int width, int height, int rotationDegrees,
+                 int cropLeft, int cropTop, int cropSize, FloatBuffer out, int[] previewArgb) {
+        int uprightW = uprightWidth(width, height, rotationDegrees);
+        int uprightH = uprightHeight(width, height, rotationDegrees);
+        int basePosition = out.position();
+
+        for (int oy = 0; oy < outputSize; oy++) {
+            int v0 = clamp(cropTop + (int) ((long) oy * cropSize / outputSize), 0, uprightH - 1);
+            int v1 = clamp(cropTop + (int) ((long) (oy + 1) * cropSize / outputSize), v0 + 1, uprightH);
+
+            for (int ox = 0; ox < outputSize; ox++) {
+                int u0 = clamp(cropLeft + (int) ((long) ox * cropSize / outputSize), 0, uprightW - 1);
+                int u1 = clamp(cropLeft + (int) ((long) (ox + 1) * cropSize / outputSize), u0 + 1, uprightW);
+
+                // Prostokąt [u0,u1)x[v0,v1) w obrazie obróconym -> prostokąt w buforze sensora
+                int x0, x1, y0, y1;
+                switch (rotationDegrees) {
+                    case 90:
+                        x0 = v0; x1 = v1;
+                        y0 = height - u1; y1 = height - u0;
+                        break;
+                    case 180:
+                        x0 = width - u1; x1 = width - u0;
+                        y0 = height - v1; y1 = height - v0;
+                        break;
+                    case 270:
+                        x0 = width - v1; x1 = width - v0;
+                        y0 = u0; y1 = u1;
+                        break;
+                    default:
+                        x0 = u0; x1 = u1;
+                        y0 = v0; y1 = v1;
+                        break;
+                }
+
+                int sum = 0;
+                for (int y = y0; y < y1; y++) {
+                    int index = y * rowStride + x0 * pixelStride;
+                    for (int x = x0; x < x1; x++) {
+                        sum += luma.get(index) & 0xFF;
+                        index += pixelStride;
+                    }
+                }
+                int count = (x1 - x0) * (y1 - y0);
+                int gray = sum / count;
+
+                int outIndex = oy * outputSize + ox;
+                out.put(basePosition + outIndex, gray / 255.0f);
+                if (previewArgb != null) {
+                    previewArgb[outIndex] = 0xFF000000 | (gray << 16) | (gray << 8) | gray;
+                }
+            }
+        }
+        out.position(basePosition + outputSize * outputSize);
+    }
+
+    /**
+     * Próbkuje cały obraz (po obrocie) co {@code step} pikseli do {@code out}
+     * o wymiarach {@code uprightWidth / step} x {@code uprightHeight / step}.
+     * Tani podgląd klatki dla detektora i śledzenia twarzy.
+     */
+    public static void sampleUpright(ByteBuffer luma, int rowStride, int pixelStride, int width, int height,
+                                     int rotationDegrees, int step, byte[] out) {
+        int outW = uprightWidth(width, height, rotationDegrees) / step;
+        int outH = uprightHeight(width, height, rotationDegrees) / step;
+        int half = step / 2;
+        for (int oy = 0; oy < outH; oy++) {
+            int v = oy * step + half;
+            for (int ox = 0; ox < outW; ox++) {
+                int u = ox * step + half;
+                int x, y;
+                switch (rotationDegrees) {
+                    case 90:
+                        x = v; y = height - 1 - u;
+                        break;
+                    case 180:
+                        x = width - 1 - u; y = height - 1 - v;
+                        break;
+                    case 270:
+                        x = width - 1 - v; y = u;
+                        break;
+                    default:
+                        x = u; y = v;
+                        break;
+                }
+                out[oy * outW + ox] = luma.get(y * rowStride + x * pixelStride);
+            }
+        }
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return value < min ? min : (value > max ? max : value);
+    }
+}
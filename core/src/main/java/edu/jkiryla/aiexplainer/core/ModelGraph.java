@@ -0,0 +1,232 @@
+package edu.jkiryla.aiexplainer.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Minimalny odczyt grafu z pliku .tflite (FlatBuffer) bez zależności od biblioteki flatbuffers.
+ * Pozwala znaleźć wyjścia warstw konwolucyjnych i gęstych oraz dopisać je do wyjść podgrafu,
+ * tak aby interpreter zachował je po jednym wywołaniu.
+ */
+public final class ModelGraph {
+
+    public static final int OP_CONV_2D = 3;
+    public static final int OP_DEPTHWISE_CONV_2D = 4;
+    public static final int OP_FULLY_CONNECTED = 9;
+    private static final int OP_LOGISTIC = 14;
+    private static final int OP_RELU = 19;
+    private static final int OP_RELU6 = 21;
+    private static final int OP_TANH = 28;
+    private static final int OP_LEAKY_RELU = 98;
+
+    // Indeksy pól według schematu TFLite (schema.fbs)
+    private static final int MODEL_OPERATOR_CODES = 1;
+    private static final int MODEL_SUBGRAPHS = 2;
+    private static final int SUBGRAPH_TENSORS = 0;
+    private static final int SUBGRAPH_OUTPUTS = 2;
+    private static final int SUBGRAPH_OPERATORS = 3;
+    private static final int TENSOR_SHAPE = 0;
+    private static final int TENSOR_NAME = 3;
+    private static final int OPERATOR_OPCODE_INDEX = 0;
+    private static final int OPERATOR_INPUTS = 1;
+    private static final int OPERATOR_OUTPUTS = 2;
+    private static final int OPCODE_DEPRECATED_BUILTIN = 0;
+    private static final int OPCODE_BUILTIN = 3;
+
+    public static final class Layer {
+        public final int tensorIndex;
+        public final int opCode;
+        public final String tensorName;
+        public final int[] shape;
+        public final int firstInput;
+
+        Layer(int tensorIndex, int opCode, String tensorName, int[] shape, int firstInput) {
+            this.tensorIndex = tensorIndex;
+            this.opCode = opCode;
+            this.tensorName = tensorName;
+            this.shape = shape;
+            this.firstInput = firstInput;
+        }
+
+        public boolean isActivation() {
+            return opCode == OP_RELU || opCode == OP_RELU6 || opCode == OP_LEAKY_RELU
+                    || opCode == OP_LOGISTIC || opCode == OP_TANH;
+        }
+
+        public boolean isConvolution() {
+            return opCode == OP_CONV_2D || opCode == OP_DEPTHWISE_CONV_2D;
+        }
+    }
+
+    private final ByteBuffer model;
+    private final int subgraph;
+    private final int[] outputs;
+    private final List<Layer> layers;
+
+    public ModelGraph(ByteBuffer modelBuffer) {
+        model = modelBuffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        model.position(0);
+        int root = model.getInt(0);
+        int subgraphs = field(root, MODEL_SUBGRAPHS);
+        if (subgraphs == 0 || vectorLength(subgraphs) == 0) {
+            throw new IllegalArgumentException("Model has no subgraphs");
+        }
+        subgraph = vectorTable(subgraphs, 0);
+        outputs = intVector(field(subgraph, SUBGRAPH_OUTPUTS));
+        layers = Collections.unmodifiableList(readLayers(root));
+    }
+
+    public List<Layer> getLayers() {
+        return layers;
+    }
+
+    public int getOutputCount() {
+        return outputs.length;
+    }
+
+    /**
+     * Warstwy konwolucyjne i gęste, w kolejności wykonania. Jeśli zaraz po warstwie następuje
+     * osobna aktywacja, zwracany jest jej tensor (razem z kodem warstwy), bo to on trafia dalej.
+     * Część głębokościowa konwolucji separowalnej jest pomijana na rzecz następującej po niej 1x1.
+     */
+    public List<Layer> getFeatureLayers() {
+        List<Layer> result = new ArrayList<>();
+        for (int i = 0; i < layers.size(); i++) {
+            Layer layer = layers.get(i);
+            if (!layer.isConvolution() && layer.opCode != OP_FULLY_CONNECTED) continue;
+
+            Layer next = i + 1 < layers.size() ? layers.get(i + 1) : null;
+            if (layer.opCode == OP_DEPTHWISE_CONV_2D && next != null && next.opCode == OP_CONV_2D) continue;
+            if (next != null && next.isActivation() && next.firstInput == layer.tensorIndex) {
+                result.add(new Layer(next.tensorIndex, layer.opCode, layer.tensorName, next.shape, layer.firstInput));
+            } else {
+                result.add(layer);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Zwraca kopię modelu, w której podane tensory są dopisane na końcu listy wyjść podgrafu.
+     * Oryginalne wyjścia zachowują swoje indeksy.
+     */
+    public ByteBuffer withExtraOutputs(List<Layer> extra) {
+        int oldSize = model.limit();
+        int vectorStart = (oldSize + 3) & ~3;
+        int count = outputs.length + extra.size();
+        ByteBuffer patched = ByteBuffer.allocateDirect(vectorStart + 4 + 4 * count).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer source = model.duplicate();
+        source.position(0).limit(oldSize);
+        patched.put(source);
+
+        patched.putInt(vectorStart, count);
+        int position = vectorStart + 4;
+        for (int output : outputs) {
+            patched.putInt(position, output);
+            position += 4;
+        }
+        for (Layer layer : extra) {
+            patched.putInt(position, layer.tensorIndex);
+            position += 4;
+        }
+
+        int fieldPosition = fieldPosition(subgraph, SUBGRAPH_OUTPUTS);
+        patched.putInt(fieldPosition, vectorStart - fieldPosition);
+        patched.position(0);
+        return patched;
+    }
+
+    private List<Layer> readLayers(int root) {
+        int[] opCodes = readOperatorCodes(field(root, MODEL_OPERATOR_CODES));
+        int tensors = field(subgraph, SUBGRAPH_TENSORS);
+        int operators = field(subgraph, SUBGRAPH_OPERATORS);
+        List<Layer> result = new ArrayList<>();
+        if (operators == 0) return result;
+
+        int operatorCount = vectorLength(operators);
+        for (int i = 0; i < operatorCount; i++) {
+            int operator = vectorTable(operators, i);
+            int opcodeIndex = scalarInt(operator, OPERATOR_OPCODE_INDEX, 0);
+            int[] opInputs = intVector(field(operator, OPERATOR_INPUTS));
+            int[] opOutputs = intVector(field(operator, OPERATOR_OUTPUTS));
+            if (opOutputs.length == 0 || opcodeIndex >= opCodes.length) continue;
+
+            int tensorIndex = opOutputs[0];
+            int tensor = vectorTable(tensors, tensorIndex);
+            result.add(new Layer(tensorIndex, opCodes[opcodeIndex],
+                    string(field(tensor, TENSOR_NAME)), intVector(field(tensor, TENSOR_SHAPE)),
+                    opInputs.length > 0 ? opInputs[0] : -1));
+        }
+        return result;
+    }
+
+    private int[] readOperatorCodes(int vector) {
+        if (vector == 0) return new int[0];
+        int[] codes = new int[vectorLength(vector)];
+        for (int i = 0; i < codes.length; i++) {
+            int opCode = vectorTable(vector, i);
+            int deprecated = scalarByte(opCode, OPCODE_DEPRECATED_BUILTIN);
+            int builtin = scalarInt(opCode, OPCODE_BUILTIN, 0);
+            // Nowsze konwertery zapisują kod w obu polach; starsze tylko w polu przestarzałym
+            codes[i] = Math.max(deprecated, builtin);
+        }
+        return codes;
+    }
+
+    // --- Odczyt FlatBuffer ---
+
+    private int fieldPosition(int table, int fieldIndex) {
+        int vtable = table - model.getInt(table);
+        int vtableSize = model.getShort(vtable) & 0xFFFF;
+        int entry = 4 + 2 * fieldIndex;
+        if (entry >= vtableSize) return 0;
+        int offset = model.getShort(vtable + entry) & 0xFFFF;
+        return offset == 0 ? 0 : table + offset;
+    }
+
+    /** Pozycja obiektu wskazywanego przez pole-offset albo 0, gdy pola brak. */
+    private int field(int table, int fieldIndex) {
+        int position = fieldPosition(table, fieldIndex);
+        return position == 0 ? 0 : position + model.getInt(position);
+    }
+
+    private int scalarInt(int table, int fieldIndex, int defaultValue) {
+        int position = fieldPosition(table, fieldIndex);
+        return position == 0 ? defaultValue : model.getInt(position);
+    }
+
+    private int scalarByte(int table, int fieldIndex) {
+        int position = fieldPosition(table, fieldIndex);
+        return position == 0 ? 0 : model.get(position);
+    }
+
+    private int vectorLength(int vector) {
+        return model.getInt(vector);
+    }
+
+    private int vectorTable(int vector, int index) {
+        int element = vector + 4 + 4 * index;
+        return element + model.getInt(element);
+    }
+
+    private int[] intVector(int vector) {
+        if (vector == 0) return new int[0];
+        int[] values = new int[vectorLength(vector)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = model.getInt(vector + 4 + 4 * i);
+        }
+        return values;
+    }
+
+    private String string(int vector) {
+        if (vector == 0) return "";
+        byte[] bytes = new byte[vectorLength(vector)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = model.get(vector + 4 + i);
+        }
+        return new String(bytes, java.nio.charset.StandardCharsets.UTF_8);
+    }
+}
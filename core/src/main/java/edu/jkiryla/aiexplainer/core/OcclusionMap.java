@@ -0,0 +1,100 @@
+package edu.jkiryla.aiexplainer.core;
+
+/**
+ * Wrażliwość na okluzję: kwadratowa łata przesuwana po wejściu co {@code stride} pikseli.
+ * Wszystkie zasłonięte warianty trafiają do jednego wsadu [N, H, W, 1], więc model
+ * liczy je jednym wywołaniem. Wartość mapy w pikselu to średni spadek wyniku klasy
+ * po zasłonięciu łat, które go obejmują.
+ */
+public final class OcclusionMap {
+
+    private final int width;
+    private final int height;
+    private final int patch;
+    private final int stride;
+    private final int[] patchLefts;
+    private final int[] patchTops;
+
+    public OcclusionMap(int width, int height, int patch, int stride) {
+        this.width = width;
+        this.height = height;
+        this.patch = Math.min(patch, Math.min(width, height));
+        this.stride = Math.max(1, stride);
+        patchLefts = positions(width, this.patch, this.stride);
+        patchTops = positions(height, this.patch, this.stride);
+    }
+
+    // Pozycje łat tak, żeby ostatnia dochodziła do krawędzi
+    private static int[] positions(int extent, int patch, int stride) {
+        int count = (extent - patch + stride - 1) / stride + 1;
+        int[] result = new int[count];
+        for (int i = 0; i < count; i++) result[i] = Math.min(i * stride, extent - patch);
+        return result;
+    }
+
+    public int getVariantCount() {
+        return patchLefts.length * patchTops.length;
+    }
+
+    /**
+     * Zapisuje warianty {@code first .. first + count - 1} wejścia do kolejnych wierszy
+     * {@code batch} od indeksu {@code batchOffset}, każdy z jedną łatą wypełnioną {@code fillValue}.
+     */
+    public void fillBatch(float[] input, float fillValue, int first, int count, float[] batch, int batchOffset) {
+        int elements = width * height;
+        for (int v = 0; v < count; v++) {
+            int variant = first + v;
+            int offset = batchOffset + v * elements;
+            System.arraycopy(input, 0, batch, offset, elements);
+            int left = patchLefts[variant % patchLefts.length];
+            int top = patchTops[variant / patchLefts.length];
+            for (int y = top; y < top + patch; y++) {
+                int row = offset + y * width;
+                for (int x = left; x < left + patch; x++) batch[row + x] = fillValue;
+            }
+        }
+    }
+
+    /**
+     * Mapa spadku wyniku: {@code baseline} minus wynik wariantu, uśredniony po łatach
+     * obejmujących piksel. Dodatnie wartości to obszary, które podtrzymują decyzję modelu.
+     */
+    public float[] heatmap(float baseline, float[] variantScores) {
+        float[] sum = new float[width * height];
+        int[] hits = new int[width * height];
+        for (int variant = 0; variant < getVariantCount(); variant++) {
+            float drop = baseline - variantScores[variant];
+            int left = patchLefts[variant % patchLefts.length];
+            int top = patchTops[variant / patchLefts.length];
+            for (int y = top; y < top + patch; y++) {
+                for (int x = left; x < left + patch; x++) {
+                    sum[y * width + x] += drop;
+                    hits[y * width + x]++;
+                }
+            }
+        }
+        for (int i = 0; i < sum.length; i++) {
+            if (hits[i] > 0) sum[i] /= hits[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Nakłada mapę na wejście w skali szarości (0..1): czerwień tam, gdzie zasłonięcie
+     * obniża wynik, błękit tam, gdzie go podnosi. Skala względem największej wartości bezwzględnej.
+     */
+    public static void toArgb(float[] heat, float[] input, int[] argb) {
+        float maxAbs = 1e-6f;
+        for (float value : heat) maxAbs = Math.max(maxAbs, Math.abs(value));
+        for (int i = 0; i < heat.length; i++) {
+            // Wejście przyciemnione o połowę, żeby kolor mapy był czytelny także na tuszu
+            int gray = (int) (Math.max(0f, Math.min(1f, input[i])) * 127);
+            float t = Math.min(1f, Math.abs(heat[i]) / maxAbs);
+            int accent = gray + (int) (t * (255 - gray));
+            int rest = (int) (gray * (1f - t / 2));
+            argb[i] = heat[i] > 0
+                    ? 0xFF000000 | (accent << 16) | (rest << 8) | rest
+                    : 0xFF000000 | (rest << 16) | (rest << 8) | accent;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package edu.jkiryla.aiexplainer.core;
+
+/**
+ * Wygładzanie wykładnicze kolejnych rozkładów prawdopodobieństwa, żeby etykieta
+ * w trybie na żywo nie przeskakiwała między klasami z klatki na klatkę.
+ */
+public final class ProbabilitySmoother {
+
+    private final float alpha;
+    private final float[] state;
+    private boolean primed;
+
+    /** @param alpha waga nowego rozkładu (0..1]; 1 wyłącza wygładzanie */
+    public ProbabilitySmoother(int classes, float alpha) {
+        if (alpha <= 0f || alpha > 1f) throw new IllegalArgumentException("alpha must be in (0, 1]");
+        this.alpha = alpha;
+        this.state = new float[classes];
+    }
+
+    /** Dołącza {@code probabilities} do średniej i nadpisuje je wygładzonym wynikiem. */
+    public void update(float[] probabilities) {
+        if (!primed) {
+            System.arraycopy(probabilities, 0, state, 0, state.length);
+            primed = true;
+            return;
+        }
+        for (int i = 0; i < state.length; i++) {
+            state[i] += alpha * (probabilities[i] - state[i]);
+            probabilities[i] = state[i];
+        }
+    }
+
+    public void reset() {
+        primed = false;
+    }
+}
@@ -0,0 +1,56 @@
+package edu.jkiryla.aiexplainer.core;
+
+import java.util.Locale;
+
+/**
+ * Dobiera tempo ciągłej inferencji do stanu urządzenia: temperatury, oszczędzania baterii
+ * i zmierzonego czasu wywołań. Sygnały mogą przychodzić z różnych wątków; wynikiem są
+ * bieżące {@link Settings}, które aktywność porównuje z zastosowanymi.
+ */
+public interface RateController {
+
+    // Poziomy temperatury o tych samych wartościach co PowerManager.THERMAL_STATUS_*
+    int THERMAL_NONE = 0;
+    int THERMAL_LIGHT = 1;
+    int THERMAL_MODERATE = 2;
+    int THERMAL_SEVERE = 3;
+    int THERMAL_CRITICAL = 4;
+    int THERMAL_EMERGENCY = 5;
+    int THERMAL_SHUTDOWN = 6;
+
+    /** Niezmienne ustawienia; {@link #maxThreads} <= 0 oznacza brak ograniczenia. */
+    final class Settings {
+        public final float targetFps;
+        public final int analysisWidth;
+        public final int analysisHeight;
+        public final int maxThreads;
+
+        public Settings(float targetFps, int analysisWidth, int analysisHeight, int maxThreads) {
+            this.targetFps = targetFps;
+            this.analysisWidth = analysisWidth;
+            this.analysisHeight = analysisHeight;
+            this.maxThreads = maxThreads;
+        }
+
+        /** Najkrótszy odstęp między kolejnymi zleceniami inferencji. */
+        public long getMinIntervalNanos() {
+            return (long) (1_000_000_000L / targetFps);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%.0f FPS, %dx%d, %s", targetFps, analysisWidth, analysisHeight,
+                    maxThreads > 0 ? maxThreads + " wątk." : "wątki auto");
+        }
+    }
+
+    /** Stan temperatury, jedna ze stałych THERMAL_*. */
+    void onThermalStatus(int status);
+
+    void onPowerSaveMode(boolean enabled);
+
+    /** Czas jednego wywołania modelu. */
+    void onInferenceLatency(long nanos);
+
+    Settings getSettings();
+}
@@ -0,0 +1,130 @@
+package edu.jkiryla.aiexplainer.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Rysunek zapisany wektorowo: każde pociągnięcie to tablica float z naprzemiennymi
+ * współrzędnymi x, y (we współrzędnych widoku) i grubość. Kilka kilobajtów zamiast
+ * pełnoekranowej bitmapy, a cofanie, ponawianie i odtwarzanie to przejście po tablicach.
+ * Nie jest bezpieczny wątkowo: używa go tylko wątek UI.
+ */
+public final class StrokeStore {
+
+    /** Jedno pociągnięcie; {@link #points} może mieć zapas za {@link #length}. */
+    public static final class Stroke {
+        private float[] points = new float[32];
+        private int length;
+        private final float width;
+
+        Stroke(float width) {
+            this.width = width;
+        }
+
+        void add(float x, float y) {
+            if (length + 2 > points.length) points = Arrays.copyOf(points, points.length * 2);
+            points[length++] = x;
+            points[length++] = y;
+        }
+
+        public int getPointCount() {
+            return length / 2;
+        }
+
+        public float getX(int point) {
+            return points[2 * point];
+        }
+
+        public float getY(int point) {
+            return points[2 * point + 1];
+        }
+
+        public float getWidth() {
+            return width;
+        }
+
+        void trim() {
+            points = Arrays.copyOf(points, length);
+        }
+    }
+
+    private final List<Stroke> strokes = new ArrayList<>();
+    private final List<Stroke> redoStack = new ArrayList<>();
+    private Stroke current;
+
+    /** Nowe pociągnięcie czyści historię ponowień. */
+    public void beginStroke(float x, float y, float width) {
+        endStroke();
+        redoStack.clear();
+        current = new Stroke(width);
+        current.add(x, y);
+    }
+
+    public void addPoint(float x, float y) {
+        if (current != null) current.add(x, y);
+    }
+
+    /** Zamyka bieżące pociągnięcie; false, gdy żadne nie było otwarte. */
+    public boolean endStroke() {
+        if (current == null) return false;
+        current.trim();
+        strokes.add(current);
+        current = null;
+        return true;
+    }
+
+    public boolean canUndo() {
+        return current == null && !strokes.isEmpty();
+    }
+
+    public boolean canRedo() {
+        return current == null && !redoStack.isEmpty();
+    }
+
+    /** Zwraca cofnięte pociągnięcie albo null. */
+    public Stroke undo() {
+        if (!canUndo()) return null;
+        Stroke stroke = strokes.remove(strokes.size() - 1);
+        redoStack.add(stroke);
+        return stroke;
+    }
+
+    /** Zwraca przywrócone pociągnięcie albo null. */
+    public Stroke redo() {
+        if (!canRedo()) return null;
+        Stroke stroke = redoStack.remove(redoStack.size() - 1);
+        strokes.add(stroke);
+        return stroke;
+    }
+
+    public void clear() {
+        strokes.clear();
+        redoStack.clear();
+        current = null;
+    }
+
+    /** Zakończone pociągnięcia w kolejności rysowania. */
+    public List<Stroke> getStrokes() {
+        return strokes;
+    }
+
+    /** Odtwarza wszystkie pociągnięcia (także bieżące) od zera w {@code grid}. */
+    public void rasterize(CoverageGrid grid) {
+        grid.clear();
+        for (Stroke stroke : strokes) rasterize(stroke, grid);
+        if (current != null) rasterize(current, grid);
+    }
+
+    static void rasterize(Stroke stroke, CoverageGrid grid) {
+        float[] p = stroke.points;
+        // Pierwszy odcinek zerowej długości daje kropkę dla pojedynczego dotknięcia
+        float lastX = p[0];
+        float lastY = p[1];
+        for (int i = 0; i < stroke.length; i += 2) {
+            grid.addSegment(lastX, lastY, p[i], p[i + 1], stroke.width);
+            lastX = p[i];
+            lastY = p[i + 1];
+        }
+    }
+}
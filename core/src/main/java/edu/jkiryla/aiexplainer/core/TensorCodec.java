@@ -0,0 +1,87 @@
+package edu.jkiryla.aiexplainer.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Bufor jednego tensora wejściowego lub wyjściowego modelu wraz z jego kodowaniem.
+ * Dla modeli kwantyzowanych wartości są przeliczane przez skalę i punkt zerowy
+ * (q = round(v / scale) + zeroPoint), więc aktywności zawsze pracują na float.
+ */
+public final class TensorCodec {
+
+    public enum Type {
+        FLOAT32(4),
+        UINT8(1),
+        INT8(1);
+
+        public final int bytesPerElement;
+
+        Type(int bytesPerElement) {
+            this.bytesPerElement = bytesPerElement;
+        }
+    }
+
+    public final Type type;
+    public final float scale;
+    public final int zeroPoint;
+    public final int elements;
+
+    private final ByteBuffer buffer;
+    private final FloatBuffer floatView;
+
+    public TensorCodec(Type type, float scale, int zeroPoint, int elements) {
+        if (type != Type.FLOAT32 && scale <= 0f) {
+            throw new IllegalArgumentException("Quantized tensor needs a positive scale, got " + scale);
+        }
+        this.type = type;
+        this.scale = scale;
+        this.zeroPoint = zeroPoint;
+        this.elements = elements;
+        buffer = ByteBuffer.allocateDirect(elements * type.bytesPerElement).order(ByteOrder.nativeOrder());
+        floatView = type == Type.FLOAT32 ? buffer.asFloatBuffer() : null;
+    }
+
+    /** Bufor do przekazania interpreterowi. */
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    public void encode(float[] values) {
+        buffer.rewind();
+        switch (type) {
+            case FLOAT32:
+                floatView.rewind();
+                floatView.put(values, 0, elements);
+                break;
+            case UINT8:
+                for (int i = 0; i < elements; i++) buffer.put(i, (byte) quantize(values[i], 0, 255));
+                break;
+            case INT8:
+                for (int i = 0; i < elements; i++) buffer.put(i, (byte) quantize(values[i], -128, 127));
+                break;
+        }
+    }
+
+    public void decode(float[] values) {
+        switch (type) {
+            case FLOAT32:
+                floatView.rewind();
+                floatView.get(values, 0, elements);
+                break;
+            case UINT8:
+                for (int i = 0; i < elements; i++) values[i] = ((buffer.get(i) & 0xFF) - zeroPoint) * scale;
+                break;
+            case INT8:
+                for (int i = 0; i < elements; i++) values[i] = (buffer.get(i) - zeroPoint) * scale;
+                break;
+        }
+        buffer.rewind();
+    }
+
+    private int quantize(float value, int min, int max) {
+        int q = Math.round(value / scale) + zeroPoint;
+        return q < min ? min : (q > max ? max : q);
+    }
+}
@@ -0,0 +1,67 @@
+package edu.jkiryla.aiexplainer.core;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Operacje na wejściach i wyjściach modeli, działające w miejscu na wcześniej
+ * zaalokowanych tablicach i buforach.
+ */
+public final class TensorOps {
+
+    private TensorOps() {
+    }
+
+    public static void softmaxInPlace(float[] values) {
+        float maxLogit = -Float.MAX_VALUE;
+        for (float val : values) { if (val > maxLogit) maxLogit = val; }
+        float sum = 0.0f;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (float) Math.exp(values[i] - maxLogit);
+            sum += values[i];
+        }
+        for (int i = 0; i < values.length; i++) { values[i] /= sum; }
+    }
+
+    public static int argmax(float[] values) {
+        int maxIndex = -1;
+        float maxValue = -Float.MAX_VALUE;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] > maxValue) {
+                maxValue = values[i];
+                maxIndex = i;
+            }
+        }
+        return maxIndex;
+    }
+
+    /**
+     * Normalizacja MNIST: czarny tusz na białym tle -> 1.0 dla tuszu, 0.0 dla tła.
+     * Opcjonalnie zapisuje podgląd w skali szarości do {@code previewArgb}.
+     */
+    public static void encodeInvertedRed(int[] argb, FloatBuffer out, int[] previewArgb) {
+        for (int i = 0; i < argb.length; i++) {
+            int r = (argb[i] >> 16) & 0xFF;
+            float normalized = (255.0f - r) / 255.0f;
+            out.put(normalized);
+
+            if (previewArgb != null) {
+                int previewGray = (int) (normalized * 255);
+                previewArgb[i] = 0xFF000000 | (previewGray << 16) | (previewGray << 8) | previewGray;
+            }
+        }
+    }
+
+    /**
+     * Kopiuje wartości 0..1 do wejścia modelu i zapisuje ich podgląd w skali szarości.
+     */
+    public static void encodeUnit(float[] values, FloatBuffer out, int[] previewArgb) {
+        for (int i = 0; i < values.length; i++) {
+            out.put(values[i]);
+
+            if (previewArgb != null) {
+                int previewGray = (int) (values[i] * 255);
+                previewArgb[i] = 0xFF000000 | (previewGray << 16) | (previewGray << 8) | previewGray;
+            }
+        }
+    }
+}
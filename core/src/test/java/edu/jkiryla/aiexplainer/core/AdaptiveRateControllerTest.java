@@ -0,0 +1,69 @@
+package edu.jkiryla.aiexplainer.core;
+
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class AdaptiveRateControllerTest {
+
+    private static final long FAST_NANOS = 2_000_000L;
+    // Ponad połowa odstępu między klatkami przy 30 FPS
+    private static final long SLOW_NANOS = 25_000_000L;
+
+    private static void feed(RateController controller, long nanos, int samples) {
+        for (int i = 0; i < samples; i++) controller.onInferenceLatency(nanos);
+    }
+
+    @Test
+    public void startsAtFullRate() {
+        assertSame(AdaptiveRateController.LEVELS[0], new AdaptiveRateController().getSettings());
+    }
+
+    @Test
+    public void thermalAndPowerSaveSetFloorImmediately() {
+        RateController controller = new AdaptiveRateController();
+        controller.onThermalStatus(RateController.THERMAL_SEVERE);
+        assertSame(AdaptiveRateController.LEVELS[2], controller.getSettings());
+        controller.onThermalStatus(RateController.THERMAL_EMERGENCY);
+        assertSame(AdaptiveRateController.LEVELS[3], controller.getSettings());
+
+        controller.onThermalStatus(RateController.THERMAL_NONE);
+        controller.onPowerSaveMode(true);
+        assertSame(AdaptiveRateController.LEVELS[2], controller.getSettings());
+        controller.onPowerSaveMode(false);
+        assertSame(AdaptiveRateController.LEVELS[0], controller.getSettings());
+    }
+
+    @Test
+    public void slowInferenceDegradesAfterSeveralSamples() {
+        RateController controller = new AdaptiveRateController();
+        feed(controller, SLOW_NANOS, AdaptiveRateController.DEGRADE_SAMPLES - 1);
+        assertSame(AdaptiveRateController.LEVELS[0], controller.getSettings());
+        feed(controller, SLOW_NANOS, 1);
+        assertSame(AdaptiveRateController.LEVELS[1], controller.getSettings());
+        // 25 ms mieści się w budżecie 10 FPS (50 ms), więc poziom zostaje
+        feed(controller, SLOW_NANOS, 100);
+        assertSame(AdaptiveRateController.LEVELS[1], controller.getSettings());
+    }
+
+    @Test
+    public void fastInferenceRecoversOnlyAfterLongerRun() {
+        RateController controller = new AdaptiveRateController();
+        feed(controller, SLOW_NANOS, AdaptiveRateController.DEGRADE_SAMPLES);
+        assertSame(AdaptiveRateController.LEVELS[1], controller.getSettings());
+
+        // Średnia potrzebuje kilku próbek, żeby spaść, a potem jeszcze pełnej serii
+        feed(controller, FAST_NANOS, AdaptiveRateController.RECOVER_SAMPLES);
+        assertSame(AdaptiveRateController.LEVELS[1], controller.getSettings());
+        feed(controller, FAST_NANOS, AdaptiveRateController.RECOVER_SAMPLES);
+        assertSame(AdaptiveRateController.LEVELS[0], controller.getSettings());
+    }
+
+    @Test
+    public void latencyCannotGoBelowThermalFloorOrPastLastLevel() {
+        RateController controller = new AdaptiveRateController();
+        controller.onThermalStatus(RateController.THERMAL_CRITICAL);
+        feed(controller, 10_000_000_000L, 50);
+        assertSame(AdaptiveRateController.LEVELS[3], controller.getSettings());
+    }
+}
@@ -0,0 +1,110 @@
+package edu.jkiryla.aiexplainer.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public class BlobCacheTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void contentKeyDependsOnNamespaceAndValues() {
+        float[] input = {0f, 0.5f, 1f};
+        String key = BlobCache.contentKey("MNIST@1", input);
+        assertEquals(key, BlobCache.contentKey("MNIST@1", input.clone()));
+        assertEquals(64, key.length());
+        assertFalse(key.equals(BlobCache.contentKey("MNIST@2", input)));
+        assertFalse(key.equals(BlobCache.contentKey("MNIST@1", new float[]{0f, 0.5f, 0.999f})));
+    }
+
+    @Test
+    public void diskEntriesSurviveReopen() throws IOException {
+        File dir = temp.newFolder();
+        DiskBlobStore store = new DiskBlobStore(dir, 1024);
+        store.put("a", new byte[]{1, 2, 3});
+
+        BlobCache reopened = new BlobCache(1024, new DiskBlobStore(dir, 1024));
+        assertArrayEquals(new byte[]{1, 2, 3}, bytes(reopened.get("a")));
+        assertEquals(1, reopened.getDiskHits());
+        // Drugi odczyt już z pamięci
+        reopened.get("a");
+        assertEquals(1, reopened.getMemoryHits());
+        assertNull(reopened.get("b"));
+        assertEquals(1, reopened.getMisses());
+    }
+
+    @Test
+    public void diskEvictsLeastRecentlyUsed() throws IOException {
+        DiskBlobStore store = new DiskBlobStore(temp.newFolder(), 250);
+        store.put("a", new byte[100]);
+        store.put("b", new byte[100]);
+        store.get("a");
+        store.put("c", new byte[100]);
+
+        assertTrue(store.get("a") != null);
+        assertNull(store.get("b"));
+        assertTrue(store.get("c") != null);
+        assertEquals(200, store.getSizeBytes());
+        assertEquals(2, store.getEntryCount());
+    }
+
+    @Test
+    public void memoryTierIsBoundedAndFallsBackToDisk() throws IOException {
+        BlobCache cache = new BlobCache(150, new DiskBlobStore(temp.newFolder(), 1000));
+        cache.put("a", new byte[100]);
+        cache.put("b", new byte[100]);
+        assertEquals(100, cache.getMemoryBytes());
+
+        assertTrue(cache.get("a") != null);
+        assertEquals(1, cache.getDiskHits());
+        assertEquals(100, cache.getMemoryBytes());
+    }
+
+    @Test
+    public void returnedViewsAreReadOnlyAndIndependent() throws IOException {
+        BlobCache cache = new BlobCache(1024, new DiskBlobStore(temp.newFolder(), 1024));
+        cache.put("a", new byte[]{1, 2, 3, 4});
+        ByteBuffer first = cache.get("a");
+        assertTrue(first.isReadOnly());
+        first.getInt();
+        assertEquals(4, cache.get("a").remaining());
+    }
+
+    @Test
+    public void accessOrderSurvivesReopen() throws IOException {
+        File dir = temp.newFolder();
+        DiskBlobStore store = new DiskBlobStore(dir, 250);
+        store.put("a", new byte[100]);
+        store.put("b", new byte[100]);
+        // Starsze pliki, żeby czasy zapisu nie zrównały się z zapisem kolejności
+        long hourAgo = System.currentTimeMillis() - 3_600_000L;
+        new File(dir, "a").setLastModified(hourAgo);
+        new File(dir, "b").setLastModified(hourAgo + 1000);
+        // Odczyt "a" trafia na dysk dopiero przy kolejnym zapisie
+        store.get("a");
+        store.put("c", new byte[10]);
+
+        DiskBlobStore reopened = new DiskBlobStore(dir, 250);
+        reopened.put("d", new byte[100]);
+        assertNull(reopened.get("b"));
+        assertTrue(reopened.get("a") != null);
+    }
+}
@@ -0,0 +1,83 @@
+package edu.jkiryla.aiexplainer.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+public class ClassifyAllocationTest {
+
+    private static final int ITERATIONS = 10_000;
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean bean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @Test
+    public void mnistPathDoesNotAllocate() {
+        int[] pixels = new int[28 * 28];
+        for (int i = 0; i < pixels.length; i++) pixels[i] = (i % 3 == 0) ? 0xFF000000 : 0xFFFFFFFF;
+        int[] preview = new int[28 * 28];
+        FloatBuffer input = ByteBuffer.allocateDirect(4 * 28 * 28).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        float[] output = new float[10];
+
+        Runnable step = () -> {
+            input.rewind();
+            TensorOps.encodeInvertedRed(pixels, input, preview);
+            for (int i = 0; i < output.length; i++) output[i] = input.get(i * 7);
+            TensorOps.softmaxInPlace(output);
+            TensorOps.argmax(output);
+        };
+
+        assertNoAllocation(step);
+    }
+
+    @Test
+    public void ferPathDoesNotAllocate() {
+        int width = 320, height = 240, rowStride = 336;
+        ByteBuffer luma = ByteBuffer.allocateDirect(rowStride * height);
+        for (int i = 0; i < luma.capacity(); i++) luma.put(i, (byte) i);
+        LumaPreprocessor preprocessor = new LumaPreprocessor(48);
+        int[] preview = new int[48 * 48];
+        FloatBuffer input = ByteBuffer.allocateDirect(4 * 48 * 48).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        float[] output = new float[8];
+
+        Runnable step = () -> {
+            input.rewind();
+            preprocessor.processCenterCrop(luma, rowStride, 1, width, height, 270,
+                    LumaPreprocessor.DEFAULT_CROP_FRACTION, input, preview);
+            for (int i = 0; i < output.length; i++) output[i] = input.get(i * 31);
+            TensorOps.softmaxInPlace(output);
+            TensorOps.argmax(output);
+        };
+
+        assertNoAllocation(step);
+    }
+
+    @Test
+    public void softmaxInPlaceNormalises() {
+        float[] values = {1f, 2f, 3f};
+        TensorOps.softmaxInPlace(values);
+        assertEquals(1f, values[0] + values[1] + values[2], 1e-6f);
+        assertEquals(2, TensorOps.argmax(values));
+    }
+
+    private static void assertNoAllocation(Runnable step) {
+        for (int i = 0; i < ITERATIONS; i++) step.run();
+
+        long before = allocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) step.run();
+        long allocated = allocatedBytes() - before;
+
+        // Sam odczyt licznika może coś zaalokować, ale nie proporcjonalnie do liczby iteracji
+        assertTrue("Allocated " + allocated + " bytes in " + ITERATIONS + " iterations",
+                allocated < ITERATIONS);
+    }
+}
@@ -0,0 +1,85 @@
+package edu.jkiryla.aiexplainer.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class ConvolutionEngineTest {
+
+    private static float[] randomImage(int width, int height) {
+        Random random = new Random(42);
+        float[] image = new float[width * height];
+        for (int i = 0; i < image.length; i++) image[i] = random.nextInt(256);
+        return image;
+    }
+
+    // Referencja: bezpośrednia konwolucja z powielaniem pikseli brzegowych
+    private static float[] reference(float[] src, int width, int height, ConvolutionEngine.Kernel kernel) {
+        int radius = kernel.size / 2;
+        float[] out = new float[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                float sum = 0f;
+                for (int ky = -radius; ky <= radius; ky++) {
+                    for (int kx = -radius; kx <= radius; kx++) {
+                        int sx = Math.min(width - 1, Math.max(0, x + kx));
+                        int sy = Math.min(height - 1, Math.max(0, y + ky));
+                        sum += src[sy * width + sx] * kernel.weights[(ky + radius) * kernel.size + kx + radius];
+                    }
+                }
+                out[y * width + x] = sum;
+            }
+        }
+        return out;
+    }
+
+    @Test
+    public void fusedMatchesReferenceIncludingBorders() {
+        int width = 37, height = 23;
+        float[] src = randomImage(width, height);
+        ConvolutionEngine.Kernel blur = ConvolutionEngine.Kernel.of(5,
+                1, 4, 6, 4, 1, 4, 16, 24, 16, 4, 6, 24, 36, 24, 6, 4, 16, 24, 16, 4, 1, 4, 6, 4, 1);
+        ConvolutionEngine.Kernel sharpen = ConvolutionEngine.Kernel.of(5,
+                0, 0, 0, 0, 0, 0, 0, -1, 0, 0, 0, -1, 5, -1, 0, 0, 0, -1, 0, 0, 0, 0, 0, 0, 0);
+
+        float[][] outputs = {new float[width * height], new float[width * height]};
+        float[] combined = new float[width * height];
+        new ConvolutionEngine(1).convolveFused(src, width, height,
+                new ConvolutionEngine.Kernel[]{blur, sharpen}, outputs, combined);
+
+        float[] expectedBlur = reference(src, width, height, blur);
+        float[] expectedSharpen = reference(src, width, height, sharpen);
+        assertArrayEquals(expectedBlur, outputs[0], 1e-2f);
+        assertArrayEquals(expectedSharpen, outputs[1], 1e-2f);
+        for (int i = 0; i < combined.length; i++) {
+            assertEquals(Math.max(Math.abs(expectedBlur[i]), Math.abs(expectedSharpen[i])), combined[i], 1e-2f);
+        }
+    }
+
+    @Test
+    public void separableMatchesFullKernel() {
+        int width = 64, height = 48;
+        float[] src = randomImage(width, height);
+        float[] separable = new float[width * height];
+        new ConvolutionEngine(1).convolveSeparable(src, width, height, ConvolutionEngine.SOBEL_X, separable);
+
+        assertArrayEquals(reference(src, width, height, ConvolutionEngine.SOBEL_X), separable, 1e-3f);
+    }
+
+    @Test
+    public void parallelTilesMatchSingleThread() {
+        int width = 320, height = 240;
+        float[] src = randomImage(width, height);
+        ConvolutionEngine.Kernel[] sobel = {ConvolutionEngine.SOBEL_X, ConvolutionEngine.SOBEL_Y};
+
+        float[] single = new float[width * height];
+        float[] parallel = new float[width * height];
+        new ConvolutionEngine(1).convolveFused(src, width, height, sobel, null, single);
+        new ConvolutionEngine(4).convolveFused(src, width, height, sobel, null, parallel);
+
+        assertArrayEquals(single, parallel, 0f);
+    }
+}
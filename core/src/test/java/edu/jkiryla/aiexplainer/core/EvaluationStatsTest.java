@@ -0,0 +1,40 @@
+package edu.jkiryla.aiexplainer.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class EvaluationStatsTest {
+
+    @Test
+    public void accuracyAndConfusionMatrix() {
+        EvaluationStats stats = new EvaluationStats(new String[]{"a", "b", "c"});
+        stats.recordPrediction(0, 0);
+        stats.recordPrediction(0, 1);
+        stats.recordPrediction(1, 1);
+        stats.recordPrediction(2, 0);
+
+        assertEquals(0.5f, stats.getAccuracy(), 1e-6f);
+        long[][] confusion = stats.getConfusionMatrix();
+        assertArrayEquals(new long[]{1, 1, 0}, confusion[0]);
+        assertArrayEquals(new long[]{0, 1, 0}, confusion[1]);
+        assertArrayEquals(new long[]{1, 0, 0}, confusion[2]);
+    }
+
+    @Test
+    public void percentilesAndThroughputPerBatchSize() {
+        EvaluationStats stats = new EvaluationStats(new String[]{"a"});
+        for (int i = 1; i <= 100; i++) stats.recordBatch(8, 8, i * 1_000_000L);
+        stats.recordBatch(1, 1, 2_000_000L);
+
+        assertEquals(50.0, stats.getLatencyPercentileMs(8, 50), 1e-9);
+        assertEquals(95.0, stats.getLatencyPercentileMs(8, 95), 1e-9);
+        assertEquals(99.0, stats.getLatencyPercentileMs(8, 99), 1e-9);
+        // 800 obrazów w sumie 5050 ms
+        assertEquals(800 / 5.05, stats.getImagesPerSecond(8), 1e-6);
+        assertEquals(500.0, stats.getImagesPerSecond(1), 1e-6);
+        assertTrue(stats.toReport().contains("p95 ms"));
+    }
+}
@@ -0,0 +1,82 @@
+package edu.jkiryla.aiexplainer.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class FaceTrackerTest {
+
+    private static final int WIDTH = 120;
+    private static final int HEIGHT = 160;
+    private static final int PATCH = 40;
+
+    private static final byte[] PATTERN = new byte[PATCH * PATCH];
+
+    static {
+        Random random = new Random(7);
+        for (int i = 0; i < PATTERN.length; i++) PATTERN[i] = (byte) (40 + random.nextInt(180));
+    }
+
+    // Gładkie tło i teksturowana "twarz" o środku (cx, cy), rozjaśniona o brightness
+    private static byte[] frame(int cx, int cy, int brightness) {
+        byte[] frame = new byte[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int value = 100 + x / 4 + brightness;
+                int px = x - (cx - PATCH / 2);
+                int py = y - (cy - PATCH / 2);
+                if (px >= 0 && px < PATCH && py >= 0 && py < PATCH) {
+                    value = (PATTERN[py * PATCH + px] & 0xFF) + brightness;
+                }
+                frame[y * WIDTH + x] = (byte) Math.max(0, Math.min(255, value));
+            }
+        }
+        return frame;
+    }
+
+    @Test
+    public void followsShiftedFaceBetweenKeyframes() {
+        FaceTracker tracker = new FaceTracker(15, 8);
+        assertTrue(tracker.needsKeyframe());
+        tracker.onDetection(frame(60, 80, 0), WIDTH, HEIGHT, 60, 80, PATCH);
+        assertFalse(tracker.needsKeyframe());
+
+        assertTrue(tracker.track(frame(63, 78, 0), WIDTH, HEIGHT));
+        assertEquals(63f, tracker.getCenterX(), 0f);
+        assertEquals(78f, tracker.getCenterY(), 0f);
+
+        // Zmiana oświetlenia nie powinna przesuwać obszaru
+        assertTrue(tracker.track(frame(66, 76, 25), WIDTH, HEIGHT));
+        assertEquals(66f, tracker.getCenterX(), 0f);
+        assertEquals(76f, tracker.getCenterY(), 0f);
+    }
+
+    @Test
+    public void requestsKeyframeAfterInterval() {
+        FaceTracker tracker = new FaceTracker(3, 4);
+        byte[] still = frame(60, 80, 0);
+        tracker.onDetection(still, WIDTH, HEIGHT, 60, 80, PATCH);
+        for (int i = 0; i < 3; i++) {
+            assertFalse(tracker.needsKeyframe());
+            assertTrue(tracker.track(still, WIDTH, HEIGHT));
+        }
+        assertTrue(tracker.needsKeyframe());
+    }
+
+    @Test
+    public void dropsRoiWhenFaceDisappears() {
+        FaceTracker tracker = new FaceTracker(15, 8);
+        tracker.onDetection(frame(60, 80, 0), WIDTH, HEIGHT, 60, 80, PATCH);
+
+        byte[] empty = new byte[WIDTH * HEIGHT];
+        Random random = new Random(3);
+        for (int i = 0; i < empty.length; i++) empty[i] = (byte) random.nextInt(256);
+        assertFalse(tracker.track(empty, WIDTH, HEIGHT));
+        assertFalse(tracker.hasRoi());
+        assertTrue(tracker.needsKeyframe());
+    }
+}
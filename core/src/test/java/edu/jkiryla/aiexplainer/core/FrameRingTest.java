@@ -0,0 +1,61 @@
+package edu.jkiryla.aiexplainer.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class FrameRingTest {
+
+    private static void write(FrameRing ring, int frame) {
+        ring.write(frame * 1000L, new float[]{frame, frame}, new float[]{frame * 10});
+    }
+
+    @Test
+    public void stepsBackFromNewestAcrossWrap() {
+        FrameRing ring = new FrameRing(3, 2, 1);
+        for (int frame = 1; frame <= 5; frame++) write(ring, frame);
+
+        assertEquals(3, ring.size());
+        float[] output = new float[1];
+        float[] input = new float[2];
+        for (int back = 0; back < 3; back++) {
+            int frame = 5 - back;
+            assertEquals(frame * 1000L, ring.getTimestamp(back));
+            ring.copyOutput(back, output);
+            assertArrayEquals(new float[]{frame * 10}, output, 0f);
+            ring.copyInput(back, input);
+            assertArrayEquals(new float[]{frame, frame}, input, 0f);
+        }
+    }
+
+    @Test
+    public void sharedInputSurvivesOverwrite() {
+        FrameRing ring = new FrameRing(2, 2, 1);
+        write(ring, 1);
+        write(ring, 2);
+        float[] shared = ring.shareInput(1);
+        assertSame(shared, ring.shareInput(1));
+
+        write(ring, 3);
+        write(ring, 4);
+        assertArrayEquals(new float[]{1, 1}, shared, 0f);
+        float[] input = new float[2];
+        ring.copyInput(1, input);
+        assertArrayEquals(new float[]{3, 3}, input, 0f);
+    }
+
+    @Test
+    public void rejectsFramesOutsideHistory() {
+        FrameRing ring = new FrameRing(4, 2, 1);
+        write(ring, 1);
+        try {
+            ring.getTimestamp(1);
+            fail("expected IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException expected) {
+            // oczekiwane
+        }
+    }
+}
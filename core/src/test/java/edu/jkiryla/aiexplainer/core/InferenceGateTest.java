@@ -0,0 +1,58 @@
+package edu.jkiryla.aiexplainer.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class InferenceGateTest {
+
+    @Test
+    public void skipsNearlyIdenticalInputsAndCountsSavings() {
+        InferenceGate gate = new InferenceGate(4, 0.02f, 10);
+        float[] frame = {0.5f, 0.5f, 0.5f, 0.5f};
+        assertTrue(gate.shouldRun(frame));
+        gate.onInferred(frame, 8_000_000L);
+
+        float[] noisy = {0.51f, 0.49f, 0.5f, 0.5f};
+        assertFalse(gate.shouldRun(noisy));
+        gate.onSkipped();
+
+        float[] changed = {0.9f, 0.5f, 0.5f, 0.5f};
+        assertTrue(gate.shouldRun(changed));
+
+        assertEquals(0.5f, gate.getSkipRatio(), 1e-6f);
+        assertEquals(8, gate.getSavedMs());
+    }
+
+    @Test
+    public void forcesInferenceAfterMaxConsecutiveSkips() {
+        InferenceGate gate = new InferenceGate(2, 0.1f, 2);
+        float[] frame = {0.2f, 0.2f};
+        gate.onInferred(frame, 1_000_000L);
+        assertFalse(gate.shouldRun(frame));
+        gate.onSkipped();
+        assertFalse(gate.shouldRun(frame));
+        gate.onSkipped();
+        assertTrue(gate.shouldRun(frame));
+    }
+
+    @Test
+    public void smootherBlendsTowardsNewDistribution() {
+        ProbabilitySmoother smoother = new ProbabilitySmoother(2, 0.25f);
+        float[] first = {1f, 0f};
+        smoother.update(first);
+        assertArrayEquals(new float[]{1f, 0f}, first, 0f);
+
+        float[] flipped = {0f, 1f};
+        smoother.update(flipped);
+        assertArrayEquals(new float[]{0.75f, 0.25f}, flipped, 1e-6f);
+
+        smoother.reset();
+        float[] fresh = {0f, 1f};
+        smoother.update(fresh);
+        assertArrayEquals(new float[]{0f, 1f}, fresh, 0f);
+    }
+}
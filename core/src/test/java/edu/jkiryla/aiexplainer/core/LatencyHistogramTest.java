@@ -0,0 +1,37 @@
+package edu.jkiryla.aiexplainer.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverValuesWithoutGaps() {
+        for (long micros = 0; micros < 100_000; micros++) {
+            int bucket = LatencyHistogram.bucketOf(micros);
+            assertTrue(LatencyHistogram.lowerBoundMicros(bucket) <= micros);
+            assertTrue(LatencyHistogram.lowerBoundMicros(bucket + 1) > micros);
+        }
+    }
+
+    @Test
+    public void percentilesStayWithinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) histogram.record(i * 1_000_000L);
+        assertEquals(100, histogram.getCount());
+        assertEquals(50, histogram.getPercentileMs(0.5), 50 * 0.125);
+        assertEquals(95, histogram.getPercentileMs(0.95), 95 * 0.125);
+        assertEquals(1, histogram.getPercentileMs(0.0), 0.125);
+    }
+
+    @Test
+    public void resetClearsCounts() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(5_000_000L);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileMs(0.5), 0);
+    }
+}
@@ -0,0 +1,53 @@
+package edu.jkiryla.aiexplainer.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class OcclusionMapTest {
+
+    @Test
+    public void patchesCoverWholeInputUpToEdges() {
+        OcclusionMap map = new OcclusionMap(28, 28, 6, 4);
+        // Pozycje 0,4,...,20 i dosunięta do krawędzi 22
+        assertEquals(7 * 7, map.getVariantCount());
+
+        float[] input = new float[28 * 28];
+        java.util.Arrays.fill(input, 1f);
+        float[] batch = new float[map.getVariantCount() * input.length];
+        map.fillBatch(input, 0f, 0, map.getVariantCount(), batch, 0);
+
+        float[] last = new float[input.length];
+        System.arraycopy(batch, (map.getVariantCount() - 1) * input.length, last, 0, input.length);
+        assertEquals(0f, last[27 * 28 + 27], 0f);
+        assertEquals(1f, last[21 * 28 + 21], 0f);
+    }
+
+    @Test
+    public void heatmapHighlightsRegionTheScoreDependsOn() {
+        int size = 12;
+        OcclusionMap map = new OcclusionMap(size, size, 3, 3);
+        float[] input = new float[size * size];
+        for (int i = 0; i < input.length; i++) input[i] = 1f;
+
+        int variants = map.getVariantCount();
+        float[] batch = new float[variants * input.length];
+        map.fillBatch(input, 0f, 0, variants, batch, 0);
+
+        // "Model" patrzy tylko na prawy dolny róg
+        float[] scores = new float[variants];
+        for (int v = 0; v < variants; v++) {
+            float score = 0;
+            for (int y = 9; y < 12; y++) {
+                for (int x = 9; x < 12; x++) score += batch[v * input.length + y * size + x];
+            }
+            scores[v] = score / 9f;
+        }
+
+        float[] heat = map.heatmap(1f, scores);
+        assertEquals(1f, heat[11 * size + 11], 1e-6f);
+        assertEquals(0f, heat[0], 1e-6f);
+        assertTrue(heat[10 * size + 10] > heat[5 * size + 5]);
+    }
+}
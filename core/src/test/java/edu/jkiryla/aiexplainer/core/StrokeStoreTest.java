@@ -0,0 +1,79 @@
+package edu.jkiryla.aiexplainer.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class StrokeStoreTest {
+
+    private static final float WIDTH = 60f;
+
+    @Test
+    public void replayMatchesIncrementalRasterisation() {
+        CoverageGrid incremental = new CoverageGrid(28);
+        incremental.setViewSize(560, 560);
+        StrokeStore store = new StrokeStore();
+
+        float[][] points = {{100, 100}, {180, 140}, {260, 300}, {250, 420}};
+        store.beginStroke(points[0][0], points[0][1], WIDTH);
+        incremental.addSegment(points[0][0], points[0][1], points[0][0], points[0][1], WIDTH);
+        for (int i = 1; i < points.length; i++) {
+            store.addPoint(points[i][0], points[i][1]);
+            incremental.addSegment(points[i - 1][0], points[i - 1][1], points[i][0], points[i][1], WIDTH);
+        }
+        store.endStroke();
+
+        CoverageGrid replayed = new CoverageGrid(28);
+        replayed.setViewSize(560, 560);
+        store.rasterize(replayed);
+
+        float[] expected = new float[28 * 28];
+        float[] actual = new float[28 * 28];
+        incremental.copyTo(expected);
+        replayed.copyTo(actual);
+        assertArrayEquals(expected, actual, 0f);
+    }
+
+    @Test
+    public void undoAndRedoMoveWholeStrokes() {
+        StrokeStore store = new StrokeStore();
+        store.beginStroke(0, 0, WIDTH);
+        store.addPoint(10, 10);
+        store.endStroke();
+        store.beginStroke(50, 50, WIDTH);
+        store.endStroke();
+
+        assertEquals(2, store.getStrokes().size());
+        assertEquals(1, store.undo().getPointCount());
+        assertEquals(1, store.getStrokes().size());
+        assertTrue(store.canRedo());
+        assertEquals(1, store.redo().getPointCount());
+        assertEquals(2, store.getStrokes().size());
+
+        store.undo();
+        store.beginStroke(5, 5, WIDTH);
+        assertFalse(store.canUndo());
+        store.endStroke();
+        assertFalse(store.canRedo());
+        assertNull(store.redo());
+    }
+
+    @Test
+    public void undoingEverythingLeavesEmptyGrid() {
+        CoverageGrid grid = new CoverageGrid(28);
+        grid.setViewSize(280, 280);
+        StrokeStore store = new StrokeStore();
+        store.beginStroke(140, 140, WIDTH);
+        store.endStroke();
+        store.undo();
+        store.rasterize(grid);
+
+        float[] cells = new float[28 * 28];
+        grid.copyTo(cells);
+        for (float cell : cells) assertEquals(0f, cell, 0f);
+    }
+}
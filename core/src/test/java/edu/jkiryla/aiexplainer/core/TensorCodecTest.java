@@ -0,0 +1,47 @@
+package edu.jkiryla.aiexplainer.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TensorCodecTest {
+
+    @Test
+    public void float32RoundTripIsExact() {
+        TensorCodec codec = new TensorCodec(TensorCodec.Type.FLOAT32, 0f, 0, 4);
+        float[] values = {0f, 0.25f, -1.5f, 3f};
+        float[] decoded = new float[4];
+        codec.encode(values);
+        codec.decode(decoded);
+        assertArrayEquals(values, decoded, 0f);
+    }
+
+    @Test
+    public void uint8UsesScaleAndZeroPoint() {
+        TensorCodec codec = new TensorCodec(TensorCodec.Type.UINT8, 1f / 255f, 0, 3);
+        codec.encode(new float[]{0f, 1f, 0.6f});
+        assertEquals(0, codec.buffer().get(0) & 0xFF);
+        assertEquals(255, codec.buffer().get(1) & 0xFF);
+        assertEquals(153, codec.buffer().get(2) & 0xFF);
+
+        float[] decoded = new float[3];
+        codec.decode(decoded);
+        assertArrayEquals(new float[]{0f, 1f, 153f / 255f}, decoded, 1e-6f);
+    }
+
+    @Test
+    public void int8ClampsToRange() {
+        TensorCodec codec = new TensorCodec(TensorCodec.Type.INT8, 1f / 256f, -128, 4);
+        float[] values = {-1f, 0f, 0.5f, 2f};
+        codec.encode(values);
+        assertEquals(-128, codec.buffer().get(0));
+        assertEquals(-128, codec.buffer().get(1));
+        assertEquals(0, codec.buffer().get(2));
+        assertEquals(127, codec.buffer().get(3));
+
+        float[] decoded = new float[4];
+        codec.decode(decoded);
+        assertArrayEquals(new float[]{0f, 0f, 0.5f, 255f / 256f}, decoded, 1e-6f);
+    }
+}
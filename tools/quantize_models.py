@@ -0,0 +1,99 @@
+#!/usr/bin/env python3
+"""Tworzy warianty _fp16 i _int8 modelu z app/src/main/assets dla ModelRegistry.
+
+Kroki:
+  1. Zbiór bramki z prawdziwych, opisanych próbek (ten sam preprocessing co aplikacja):
+       ./gradlew :app:connectedDebugAndroidTest \\
+           -Pandroid.testInstrumentationRunnerArguments.class=edu.jkiryla.aiexplainer.BatchEvaluationTest \\
+           -Pandroid.testInstrumentationRunnerArguments.evalModel=FERPLUS \\
+           -Pandroid.testInstrumentationRunnerArguments.evalDir=/sdcard/Android/data/edu.jkiryla.aiexplainer/files/ferplus_test \\
+           -Pandroid.testInstrumentationRunnerArguments.evalExportGate=true
+       adb pull /sdcard/Android/data/edu.jkiryla.aiexplainer/files/ferplus_model_pd_best_gate.bin app/src/main/assets/
+     Dla MNIST: evalModel=MNIST i evalStrokes=<plik pociągnięć> albo evalDir=<katalog obrazów>.
+  2. Konwersja z modelu źródłowego (SavedModel albo plik Keras, nie jest w repozytorium);
+     ten sam zbiór bramki służy jako reprezentatywny zbiór kalibracji int8:
+       python3 tools/quantize_models.py --model <savedmodel|model.keras> \\
+           --gate app/src/main/assets/ferplus_model_pd_best_gate.bin \\
+           --out app/src/main/assets/ferplus_model_pd_best.tflite
+     Powstają ferplus_model_pd_best_fp16.tflite i ferplus_model_pd_best_int8.tflite.
+  3. Po instalacji ModelRegistry porównuje trafność wariantów z float32 na zbiorze bramki
+     (log "gate accuracy") i używa najmniejszego, który mieści się w tolerancji.
+
+Format zbioru bramki (BatchEvaluator.exportTensors): rekordy little-endian
+int32 etykieta + float32 * H * W tensora wejściowego.
+
+Wymaga: tensorflow>=2.14 (zgodnego z org.tensorflow:tensorflow-lite:2.14.0), numpy.
+"""
+import argparse
+import os
+
+import numpy as np
+import tensorflow as tf
+
+
+def read_gate(path, elements):
+    record = np.dtype([("label", "<i4"), ("tensor", "<f4", (elements,))])
+    data = np.fromfile(path, dtype=record)
+    if data.size == 0:
+        raise SystemExit(f"{path}: brak próbek")
+    return data["tensor"]
+
+
+def load_model(path):
+    if os.path.isdir(path):
+        return tf.saved_model.load(path)
+    return tf.keras.models.load_model(path)
+
+
+def new_converter(path, model):
+    if os.path.isdir(path):
+        return tf.lite.TFLiteConverter.from_saved_model(path)
+    return tf.lite.TFLiteConverter.from_keras_model(model)
+
+
+def input_shape(model):
+    if hasattr(model, "input_shape"):
+        return tuple(model.input_shape[1:])
+    signature = model.signatures["serving_default"]
+    spec = next(iter(signature.structured_input_signature[1].values()))
+    return tuple(spec.shape[1:])
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__, formatter_class=argparse.RawDescriptionHelpFormatter)
+    parser.add_argument("--model", required=True, help="SavedModel (katalog) albo plik Keras")
+    parser.add_argument("--gate", required=True, help="<model>_gate.bin z BatchEvaluationTest")
+    parser.add_argument("--out", required=True, help="ścieżka modelu float32 w assets, np. mnist_model.tflite")
+    parser.add_argument("--calibration-samples", type=int, default=300)
+    args = parser.parse_args()
+
+    base = args.out[:-len(".tflite")] if args.out.endswith(".tflite") else args.out
+    model = load_model(args.model)
+    shape = input_shape(model)
+    samples = read_gate(args.gate, int(np.prod(shape)))
+
+    converter = new_converter(args.model, model)
+    converter.optimizations = [tf.lite.Optimize.DEFAULT]
+    converter.target_spec.supported_types = [tf.float16]
+    with open(base + "_fp16.tflite", "wb") as f:
+        f.write(converter.convert())
+
+    def representative_dataset():
+        for tensor in samples[:args.calibration_samples]:
+            yield [tensor.reshape((1,) + shape).astype(np.float32)]
+
+    # Pełna kwantyzacja; wejście i wyjście int8 koduje TensorCodec w aplikacji
+    converter = new_converter(args.model, model)
+    converter.optimizations = [tf.lite.Optimize.DEFAULT]
+    converter.representative_dataset = representative_dataset
+    converter.target_spec.supported_ops = [tf.lite.OpsSet.TFLITE_BUILTINS_INT8]
+    converter.inference_input_type = tf.int8
+    converter.inference_output_type = tf.int8
+    with open(base + "_int8.tflite", "wb") as f:
+        f.write(converter.convert())
+
+    print(f"Zapisano {base}_fp16.tflite i {base}_int8.tflite ({len(samples)} próbek bramki)")
+
+
+if __name__ == "__main__":
+    main()